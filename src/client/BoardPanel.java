@@ -1,45 +1,71 @@
 package client;
 
+import model.GameState;
+
 import javax.swing.*;
 import java.awt.*;
-import java.util.Map;
 
 /**
  * Enhanced Ludo Board Panel with modern design
- * Features colorful player tokens, smooth rendering, and attractive styling
+ * Draws the classic 15x15 board (four bases, the 52-square track, home columns and
+ * safe stars) and every seat's four tokens at their real squares.
  */
 public class BoardPanel extends JPanel {
-    private Map<String, Integer> positions;
+    private String[] seatNames = new String[GameState.SEATS];
+    private int[] tokens;
     
+    private static final int GRID = 15;
+
     // Modern color scheme
     private static final Color BOARD_BG = new Color(30, 35, 55);
     private static final Color CELL_BORDER = new Color(50, 60, 85);
     private static final Color PATH_CELL = new Color(240, 248, 255);
     private static final Color SAFE_CELL = new Color(144, 238, 144);
     
-    // Player colors with better visibility
+    // Seat colors, clockwise from the top-left base
     private static final Color[] PLAYER_COLORS = {
         new Color(231, 76, 60),   // Red
         new Color(52, 152, 219),  // Blue
-        new Color(46, 204, 113),  // Green
-        new Color(241, 196, 15)   // Yellow
+        new Color(241, 196, 15),  // Yellow
+        new Color(46, 204, 113)   // Green
     };
     
     // Darker shades for borders
     private static final Color[] PLAYER_BORDERS = {
         new Color(192, 57, 43),   // Dark Red
         new Color(41, 128, 185),  // Dark Blue
-        new Color(39, 174, 96),   // Dark Green
-        new Color(243, 156, 18)   // Dark Yellow
+        new Color(243, 156, 18),  // Dark Yellow
+        new Color(39, 174, 96)    // Dark Green
+    };
+
+    // Light tints for bases and home columns
+    private static final Color[] PLAYER_TINTS = {
+        new Color(255, 200, 200),
+        new Color(200, 220, 255),
+        new Color(255, 255, 200),
+        new Color(200, 255, 200)
     };
+
+    // Track square -> {row, col}, clockwise from seat 0's start square
+    private static final int[][] TRACK = buildTrack();
+    // First home-column cell and step per seat: {row, col, dRow, dCol}
+    private static final int[][] HOME_COLUMNS = {
+        {7, 1, 0, 1}, {1, 7, 1, 0}, {7, 13, 0, -1}, {13, 7, -1, 0}
+    };
+    // Top-left cell of each seat's 6x6 base
+    private static final int[][] BASES = {{0, 0}, {0, 9}, {9, 9}, {9, 0}};
+    // Cell inside the center square where finished tokens gather
+    private static final int[][] FINISH_CELLS = {{7, 6}, {6, 7}, {7, 8}, {8, 7}};
     
     public BoardPanel() {
         setBackground(BOARD_BG);
         setPreferredSize(new Dimension(550, 550));
     }
     
-    public void updatePositions(Map<String, Integer> pos) {
-        this.positions = pos;
+    /** Sets the board to draw; the arrays are owned by the caller and only read on the Swing thread. */
+    public void updateBoard(String[] seatNames, int[] tokens) {
+        this.seatNames = seatNames;
+        this.tokens = tokens;
         repaint();
     }
     
@@ -53,9 +79,8 @@ public class BoardPanel extends JPanel {
         g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
         
         int cellSize = 35;
-        int grid = 15;
-        int boardWidth = grid * cellSize;
-        int boardHeight = grid * cellSize;
+        int boardWidth = GRID * cellSize;
+        int boardHeight = GRID * cellSize;
         
         // Center the board
         int offsetX = (getWidth() - boardWidth) / 2;
@@ -69,41 +94,45 @@ public class BoardPanel extends JPanel {
         g2d.setColor(new Color(0, 0, 0, 30));
         g2d.fillRoundRect(offsetX - 8, offsetY - 6, boardWidth + 16, boardHeight + 16, 18, 18);
         
-        // Draw grid cells
-        for (int i = 0; i < grid; i++) {
-            for (int j = 0; j < grid; j++) {
-                int x = offsetX + j * cellSize;
-                int y = offsetY + i * cellSize;
-                
-                // Determine cell type for coloring
-                boolean isSpecialCell = isSpecialPosition(i, j, grid);
-                
-                if (isSpecialCell) {
-                    g2d.setColor(SAFE_CELL);
-                } else if (isPathCell(i, j, grid)) {
-                    g2d.setColor(PATH_CELL);
-                } else {
-                    g2d.setColor(getHomeAreaColor(i, j, grid));
-                }
-                
+        // Bases
+        for (int seat = 0; seat < GameState.SEATS; seat++) {
+            g2d.setColor(PLAYER_TINTS[seat]);
+            g2d.fillRect(offsetX + BASES[seat][1] * cellSize, offsetY + BASES[seat][0] * cellSize,
+                    6 * cellSize, 6 * cellSize);
+        }
+        
+        // Track squares, with stars on the safe ones
+        g2d.setStroke(new BasicStroke(1.5f));
+        for (int square = 0; square < TRACK.length; square++) {
+            int x = offsetX + TRACK[square][1] * cellSize;
+            int y = offsetY + TRACK[square][0] * cellSize;
+            boolean safe = GameState.isSafeSquare(square);
+            g2d.setColor(safe ? SAFE_CELL : PATH_CELL);
+            g2d.fillRect(x, y, cellSize, cellSize);
+            g2d.setColor(CELL_BORDER);
+            g2d.drawRect(x, y, cellSize, cellSize);
+            if (safe) {
+                drawStar(g2d, x + cellSize / 2, y + cellSize / 2, 8, 3);
+            }
+        }
+        
+        // Home columns in each seat's color
+        for (int seat = 0; seat < GameState.SEATS; seat++) {
+            for (int i = 0; i < GameState.FINISHED - GameState.LAST_TRACK - 1; i++) {
+                int[] cell = homeColumnCell(seat, i);
+                int x = offsetX + cell[1] * cellSize;
+                int y = offsetY + cell[0] * cellSize;
+                g2d.setColor(PLAYER_TINTS[seat]);
                 g2d.fillRect(x, y, cellSize, cellSize);
-                
-                // Draw cell border
                 g2d.setColor(CELL_BORDER);
-                g2d.setStroke(new BasicStroke(1.5f));
                 g2d.drawRect(x, y, cellSize, cellSize);
-                
-                // Draw star on safe cells
-                if (isSpecialCell) {
-                    drawStar(g2d, x + cellSize / 2, y + cellSize / 2, 8, 3);
-                }
             }
         }
         
         // Draw center home circle
         int centerX = offsetX + boardWidth / 2;
         int centerY = offsetY + boardHeight / 2;
-        int centerRadius = cellSize * 2;
+        int centerRadius = cellSize * 3 / 2;
         
         // Draw outer glow
         for (int i = 3; i > 0; i--) {
@@ -120,7 +149,7 @@ public class BoardPanel extends JPanel {
         
         // Draw "HOME" text
         g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Segoe UI", Font.BOLD, 20));
+        g2d.setFont(new Font("Segoe UI", Font.BOLD, 16));
         FontMetrics fm = g2d.getFontMetrics();
         String homeText = "HOME";
         int textX = centerX - fm.stringWidth(homeText) / 2;
@@ -128,41 +157,16 @@ public class BoardPanel extends JPanel {
         g2d.drawString(homeText, textX, textY);
         
         // Draw player tokens
-        if (positions != null) {
-            int index = 0;
-            for (Map.Entry<String, Integer> entry : positions.entrySet()) {
-                int pos = entry.getValue() % (grid * grid);
-                int x = offsetX + (pos % grid) * cellSize;
-                int y = offsetY + (pos / grid) * cellSize;
-                
-                Color playerColor = PLAYER_COLORS[index % 4];
-                Color borderColor = PLAYER_BORDERS[index % 4];
-                
-                // Draw token shadow
-                g2d.setColor(new Color(0, 0, 0, 80));
-                g2d.fillOval(x + 7, y + 9, cellSize - 12, cellSize - 12);
-                
-                // Draw token
-                g2d.setColor(playerColor);
-                g2d.fillOval(x + 5, y + 5, cellSize - 10, cellSize - 10);
-                
-                // Draw token border
-                g2d.setColor(borderColor);
-                g2d.setStroke(new BasicStroke(2.5f));
-                g2d.drawOval(x + 5, y + 5, cellSize - 10, cellSize - 10);
-                
-                // Draw player initial
-                g2d.setColor(Color.WHITE);
-                g2d.setFont(new Font("Segoe UI", Font.BOLD, 14));
-                String initial = entry.getKey().substring(0, 1).toUpperCase();
-                FontMetrics tokenFm = g2d.getFontMetrics();
-                int initialX = x + (cellSize - tokenFm.stringWidth(initial)) / 2;
-                int initialY = y + (cellSize + tokenFm.getAscent()) / 2 - 2;
-                g2d.drawString(initial, initialX, initialY);
-                
-                // Draw player name below board
-                g2d.setFont(new Font("Segoe UI", Font.PLAIN, 11));
-                index++;
+        if (tokens != null) {
+            for (int seat = 0; seat < GameState.SEATS; seat++) {
+                if (seatNames[seat] == null) continue;
+                for (int t = 0; t < GameState.TOKENS; t++) {
+                    int[] cell = cellFor(seat, t, tokens[seat * GameState.TOKENS + t]);
+                    // Nudge stacked tokens so each stays visible
+                    int nudge = (t - 1) * 3;
+                    drawToken(g2d, offsetX + cell[1] * cellSize + nudge, offsetY + cell[0] * cellSize + nudge,
+                            cellSize, seat, t);
+                }
             }
             
             // Draw legend
@@ -170,35 +174,54 @@ public class BoardPanel extends JPanel {
         }
     }
     
-    private void drawLegend(Graphics2D g2d, int startX, int startY) {
-        if (positions == null) return;
+    private void drawToken(Graphics2D g2d, int x, int y, int cellSize, int seat, int token) {
+        // Draw token shadow
+        g2d.setColor(new Color(0, 0, 0, 80));
+        g2d.fillOval(x + 7, y + 9, cellSize - 12, cellSize - 12);
+        
+        // Draw token
+        g2d.setColor(PLAYER_COLORS[seat]);
+        g2d.fillOval(x + 5, y + 5, cellSize - 10, cellSize - 10);
         
-        int index = 0;
+        // Draw token border
+        g2d.setColor(PLAYER_BORDERS[seat]);
+        g2d.setStroke(new BasicStroke(2.5f));
+        g2d.drawOval(x + 5, y + 5, cellSize - 10, cellSize - 10);
+        
+        // Draw token number, matching the "Token N" buttons
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        String label = String.valueOf(token + 1);
+        FontMetrics tokenFm = g2d.getFontMetrics();
+        int labelX = x + (cellSize - tokenFm.stringWidth(label)) / 2;
+        int labelY = y + (cellSize + tokenFm.getAscent()) / 2 - 2;
+        g2d.drawString(label, labelX, labelY);
+    }
+    
+    private void drawLegend(Graphics2D g2d, int startX, int startY) {
         int legendX = startX;
         int legendY = startY;
         
-        for (Map.Entry<String, Integer> entry : positions.entrySet()) {
-            Color playerColor = PLAYER_COLORS[index % 4];
-            Color borderColor = PLAYER_BORDERS[index % 4];
+        for (int seat = 0; seat < GameState.SEATS; seat++) {
+            if (seatNames[seat] == null) continue;
             
             // Draw token
-            g2d.setColor(playerColor);
+            g2d.setColor(PLAYER_COLORS[seat]);
             g2d.fillOval(legendX, legendY, 20, 20);
-            g2d.setColor(borderColor);
+            g2d.setColor(PLAYER_BORDERS[seat]);
             g2d.setStroke(new BasicStroke(2));
             g2d.drawOval(legendX, legendY, 20, 20);
             
             // Draw name
             g2d.setColor(Color.WHITE);
             g2d.setFont(new Font("Segoe UI", Font.BOLD, 13));
-            g2d.drawString(entry.getKey(), legendX + 28, legendY + 15);
+            g2d.drawString(seatNames[seat], legendX + 28, legendY + 15);
             
             legendX += 130;
             if (legendX > startX + 400) {
                 legendX = startX;
                 legendY += 30;
             }
-            index++;
         }
     }
     
@@ -218,42 +241,41 @@ public class BoardPanel extends JPanel {
         g2d.fillPolygon(xPoints, yPoints, points * 2);
     }
     
-    private boolean isSpecialPosition(int i, int j, int grid) {
-        // Define special safe positions (simplified for demo)
-        int mid = grid / 2;
-        return (i == mid && j == 2) || (i == 2 && j == mid) || 
-               (i == mid && j == grid - 3) || (i == grid - 3 && j == mid);
+    /** Grid cell {row, col} of a token given its progress. */
+    private static int[] cellFor(int seat, int token, int progress) {
+        if (progress == GameState.IN_BASE) {
+            int[] base = BASES[seat];
+            return new int[]{base[0] + 1 + (token / 2) * 3, base[1] + 1 + (token % 2) * 3};
+        }
+        if (progress <= GameState.LAST_TRACK) {
+            return TRACK[GameState.absoluteSquare(seat, progress)];
+        }
+        if (progress < GameState.FINISHED) {
+            return homeColumnCell(seat, progress - GameState.LAST_TRACK - 1);
+        }
+        return FINISH_CELLS[seat];
     }
     
-    private boolean isPathCell(int i, int j, int grid) {
-        int mid = grid / 2;
-        // Main paths
-        return (i == mid) || (j == mid) || 
-               (i == mid - 1) || (i == mid + 1) || 
-               (j == mid - 1) || (j == mid + 1);
+    private static int[] homeColumnCell(int seat, int index) {
+        int[] c = HOME_COLUMNS[seat];
+        return new int[]{c[0] + c[2] * index, c[1] + c[3] * index};
     }
     
-    private Color getHomeAreaColor(int i, int j, int grid) {
-        int third = grid / 3;
-        
-        // Top-left (Red)
-        if (i < third && j < third) {
-            return new Color(255, 200, 200);
-        }
-        // Top-right (Blue)
-        if (i < third && j > grid - third) {
-            return new Color(200, 220, 255);
-        }
-        // Bottom-left (Green)
-        if (i > grid - third && j < third) {
-            return new Color(200, 255, 200);
-        }
-        // Bottom-right (Yellow)
-        if (i > grid - third && j > grid - third) {
-            return new Color(255, 255, 200);
+    /** Walks the 12 straight runs of the track clockwise: {row, col, dRow, dCol, length}. */
+    private static int[][] buildTrack() {
+        int[][] runs = {
+            {6, 1, 0, 1, 5}, {5, 6, -1, 0, 6}, {0, 7, 0, 1, 2}, {1, 8, 1, 0, 5},
+            {6, 9, 0, 1, 6}, {7, 14, 1, 0, 2}, {8, 13, 0, -1, 5}, {9, 8, 1, 0, 6},
+            {14, 7, 0, -1, 2}, {13, 6, -1, 0, 5}, {8, 5, 0, -1, 6}, {7, 0, -1, 0, 2}
+        };
+        int[][] track = new int[GameState.TRACK_LENGTH][];
+        int square = 0;
+        for (int[] run : runs) {
+            for (int i = 0; i < run[4]; i++) {
+                track[square++] = new int[]{run[0] + run[2] * i, run[1] + run[3] * i};
+            }
         }
-        
-        return new Color(250, 250, 255);
+        return track;
     }
     
     @Override
@@ -261,4 +283,3 @@ public class BoardPanel extends JPanel {
         return new Dimension(550, 550);
     }
 }
-
@@ -1,12 +1,14 @@
 package client;
 
 import model.Message;
+import model.MessageChannel;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.List;
@@ -18,8 +20,18 @@ import java.util.List;
 public class ChatPanel extends JPanel {
     
     private String username;
-    private ObjectOutputStream out;
+    private MessageChannel out;
     private Map<String, List<ChatMessage>> chatHistory;
+    // History page messages waiting for their HISTORY marker, and the "earlier" button of each conversation
+    private final Map<String, List<ChatMessage>> pendingHistory = new HashMap<>();
+    private final Map<String, JButton> earlierButtons = new HashMap<>();
+    private static final int HISTORY_PAGE = 30;
+    // While typing, TYPING is re-sent this often; the server drops an indicator after 6s without one
+    private static final long TYPING_REFRESH_MS = 3000;
+    private final Map<String, Set<String>> typingIn = new HashMap<>(); // chat key -> who is typing there
+    private String typingTo = null; // chat our last TYPING went to, null once stopped
+    private long typingSentAt = 0;
+    private JLabel typingLabel;
     private String currentChat = "Everyone"; // Default to group chat
     
     // UI Components
@@ -45,7 +57,7 @@ public class ChatPanel extends JPanel {
     private static final Color SECONDARY_TEXT = new Color(160, 170, 190);
     private static final Color DIVIDER_COLOR = new Color(40, 45, 65);
     
-    public ChatPanel(String username, ObjectOutputStream out) {
+    public ChatPanel(String username, MessageChannel out) {
         this.username = username;
         this.out = out;
         this.chatHistory = new HashMap<>();
@@ -156,20 +168,27 @@ public class ChatPanel extends JPanel {
         tabbedPane.setFont(new Font("Segoe UI", Font.PLAIN, 13));
         
         // Create group chat panel
-        groupChatPanel = createMessagePanel();
+        groupChatPanel = createMessagePanel("Everyone");
         groupMessagesPanel = (JPanel) ((JScrollPane) groupChatPanel.getComponent(1)).getViewport().getView();
         tabbedPane.addTab("👥 Group Chat", groupChatPanel);
         
         panel.add(tabbedPane, BorderLayout.CENTER);
         
-        // Input area
-        JPanel inputPanel = createInputPanel();
-        panel.add(inputPanel, BorderLayout.SOUTH);
+        // Input area, under a line showing who is typing in the open chat
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.setBackground(PANEL_BG);
+        typingLabel = new JLabel(" ");
+        typingLabel.setFont(new Font("Segoe UI", Font.ITALIC, 12));
+        typingLabel.setForeground(SECONDARY_TEXT);
+        typingLabel.setBorder(new EmptyBorder(4, 15, 0, 15));
+        bottomPanel.add(typingLabel, BorderLayout.NORTH);
+        bottomPanel.add(createInputPanel(), BorderLayout.CENTER);
+        panel.add(bottomPanel, BorderLayout.SOUTH);
         
         return panel;
     }
     
-    private JPanel createMessagePanel() {
+    private JPanel createMessagePanel(String chatKey) {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(CHAT_BG);
         
@@ -183,6 +202,15 @@ public class ChatPanel extends JPanel {
         chatLabel.setForeground(TEXT_COLOR);
         headerPanel.add(chatLabel, BorderLayout.WEST);
         
+        // Pages back through the server's chat history for this conversation
+        JButton earlierButton = new JButton("⬆ Earlier");
+        earlierButton.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        earlierButton.setFocusPainted(false);
+        earlierButton.setEnabled(false);
+        earlierButton.addActionListener(e -> requestHistory(chatKey, oldestId(chatKey)));
+        earlierButtons.put(chatKey, earlierButton);
+        headerPanel.add(earlierButton, BorderLayout.EAST);
+        
         panel.add(headerPanel, BorderLayout.NORTH);
         
         // Messages panel
@@ -250,6 +278,22 @@ public class ChatPanel extends JPanel {
             }
         });
         
+        messageInput.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                String text = messageInput.getText();
+                if (!text.equals(placeholder)) typed(text);
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                if (messageInput.getText().isEmpty()) stopTyping();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {}
+        });
+        
         JScrollPane inputScroll = new JScrollPane(messageInput);
         inputScroll.setBorder(BorderFactory.createCompoundBorder(
             BorderFactory.createLineBorder(DIVIDER_COLOR, 2),
@@ -299,8 +343,8 @@ public class ChatPanel extends JPanel {
                 msg = new Message(Message.PRIVATE_CHAT, text, username, currentChat);
             }
             
-            out.writeObject(msg);
-            out.flush();
+            out.send(msg);
+            typingTo = null; // the server ends the typing indicator when it gets the message
             
             // Don't add locally - server will echo back to avoid duplicates
             
@@ -312,30 +356,148 @@ public class ChatPanel extends JPanel {
         }
     }
     
+    /**
+     * Shows a chat message. One older than the newest already shown is part of a history
+     * page: it is held until the page's HISTORY marker and then merged in id order.
+     */
     public void receiveMessage(Message msg) {
         SwingUtilities.invokeLater(() -> {
             String sender = msg.getPlayerName();
-            String content = msg.getContent();
-            
+            String chatKey;
             if (msg.getType().equals(Message.PUBLIC_CHAT)) {
-                addMessageToChat("Everyone", sender, content, sender.equals(username));
+                chatKey = "Everyone";
             } else if (msg.getType().equals(Message.PRIVATE_CHAT)) {
-                String chatKey = sender.equals(username) ? msg.getRecipient() : sender;
-                addMessageToChat(chatKey, sender, content, sender.equals(username));
+                chatKey = sender.equals(username) ? msg.getRecipient() : sender;
+            } else {
+                return;
+            }
+            LocalDateTime time = msg.getTimestamp() != null ? msg.getTimestamp() : LocalDateTime.now();
+            ChatMessage chatMsg = new ChatMessage(msg.getId(), sender, msg.getContent(), time, sender.equals(username));
+            Set<String> typers = typingIn.get(chatKey);
+            if (typers != null && typers.remove(sender)) updateTypingLabel();
+            
+            List<ChatMessage> history = chatHistory.computeIfAbsent(chatKey, k -> new ArrayList<>());
+            if (chatMsg.id != 0 && !history.isEmpty() && chatMsg.id <= history.get(history.size() - 1).id) {
+                pendingHistory.computeIfAbsent(chatKey, k -> new ArrayList<>()).add(chatMsg);
+            } else {
+                addMessageToChat(chatKey, chatMsg);
             }
         });
     }
     
-    private void addMessageToChat(String chatKey, String sender, String content, boolean isSent) {
-        if (!chatHistory.containsKey(chatKey)) {
-            chatHistory.put(chatKey, new ArrayList<>());
+    /** Tells the server we're typing in the open chat, at most once per TYPING_REFRESH_MS. */
+    private void typed(String text) {
+        if (text.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        if (currentChat.equals(typingTo) && now - typingSentAt < TYPING_REFRESH_MS) return;
+        if (typingTo != null && !currentChat.equals(typingTo)) sendTyping(typingTo, false);
+        sendTyping(currentChat, true);
+        typingTo = currentChat;
+        typingSentAt = now;
+    }
+    
+    /** Tells the server we stopped typing, if it thinks we are. */
+    private void stopTyping() {
+        if (typingTo == null) return;
+        sendTyping(typingTo, false);
+        typingTo = null;
+    }
+    
+    private void sendTyping(String chatKey, boolean typing) {
+        try {
+            String content = typing ? "1" : "0";
+            out.send(chatKey.equals("Everyone")
+                    ? new Message(Message.TYPING, content, username)
+                    : new Message(Message.TYPING, content, username, chatKey));
+        } catch (IOException e) {
+            // not connected; the indicator is best effort
         }
-        
-        ChatMessage chatMsg = new ChatMessage(sender, content, LocalDateTime.now(), isSent);
-        chatHistory.get(chatKey).add(chatMsg);
+    }
+    
+    /** Handles TYPING "1"/"0" from another player, to everyone or just to us. */
+    public void typingChanged(Message msg) {
+        SwingUtilities.invokeLater(() -> {
+            String sender = msg.getPlayerName();
+            String chatKey = msg.getRecipient() == null ? "Everyone" : sender;
+            Set<String> typers = typingIn.computeIfAbsent(chatKey, k -> new LinkedHashSet<>());
+            if ("1".equals(msg.getContent())) typers.add(sender);
+            else typers.remove(sender);
+            updateTypingLabel();
+        });
+    }
+    
+    private void updateTypingLabel() {
+        Set<String> typers = typingIn.getOrDefault(currentChat, Set.of());
+        if (typers.isEmpty()) {
+            typingLabel.setText(" ");
+        } else if (typers.size() == 1) {
+            typingLabel.setText(typers.iterator().next() + " is typing...");
+        } else if (typers.size() <= 3) {
+            typingLabel.setText(String.join(", ", typers) + " are typing...");
+        } else {
+            typingLabel.setText("Several people are typing...");
+        }
+    }
+    
+    /** Handles the HISTORY "conversation|hasMore" marker that ends a page. */
+    public void historyLoaded(String content) {
+        SwingUtilities.invokeLater(() -> {
+            int bar = content.lastIndexOf('|');
+            if (bar < 0) return;
+            String chatKey = bar == 0 ? "Everyone" : content.substring(0, bar);
+            boolean hasMore = Boolean.parseBoolean(content.substring(bar + 1));
+            
+            List<ChatMessage> page = pendingHistory.remove(chatKey);
+            if (page != null) {
+                List<ChatMessage> history = chatHistory.computeIfAbsent(chatKey, k -> new ArrayList<>());
+                Set<Long> seen = new HashSet<>();
+                for (ChatMessage m : history) seen.add(m.id);
+                for (ChatMessage m : page) {
+                    if (seen.add(m.id)) history.add(m);
+                }
+                history.sort(Comparator.comparingLong(m -> m.id));
+                redraw(chatKey);
+            }
+            JButton earlier = earlierButtons.get(chatKey);
+            if (earlier != null) earlier.setEnabled(hasMore);
+        });
+    }
+    
+    /** Asks the server for the page of messages before beforeId (0 = the newest). */
+    public void requestHistory(String chatKey, long beforeId) {
+        try {
+            String conversation = chatKey.equals("Everyone") ? "" : chatKey;
+            out.send(new Message(Message.HISTORY, conversation + "|" + beforeId + "|" + HISTORY_PAGE, username));
+        } catch (IOException e) {
+            // not connected; the button stays available
+        }
+    }
+    
+    private long oldestId(String chatKey) {
+        List<ChatMessage> history = chatHistory.get(chatKey);
+        for (ChatMessage m : history == null ? List.<ChatMessage>of() : history) {
+            if (m.id != 0) return m.id;
+        }
+        return 0;
+    }
+    
+    private JPanel messagesPanelFor(String chatKey) {
+        return chatKey.equals("Everyone") ? groupMessagesPanel : privateMessagesPanels.get(chatKey);
+    }
+    
+    private void redraw(String chatKey) {
+        JPanel messagesPanel = messagesPanelFor(chatKey);
+        if (messagesPanel == null) return;
+        messagesPanel.removeAll();
+        for (ChatMessage m : chatHistory.get(chatKey)) addMessageBubble(messagesPanel, m);
+        messagesPanel.repaint();
+    }
+    
+    private void addMessageToChat(String chatKey, ChatMessage chatMsg) {
+        chatHistory.computeIfAbsent(chatKey, k -> new ArrayList<>()).add(chatMsg);
         
         // Update UI
-        JPanel messagesPanel = chatKey.equals("Everyone") ? groupMessagesPanel : privateMessagesPanels.get(chatKey);
+        JPanel messagesPanel = messagesPanelFor(chatKey);
         if (messagesPanel != null) {
             addMessageBubble(messagesPanel, chatMsg);
         }
@@ -397,6 +559,7 @@ public class ChatPanel extends JPanel {
     
     private void switchChat(String chatName) {
         currentChat = chatName;
+        updateTypingLabel();
         
         if (chatName.equals("Everyone")) {
             tabbedPane.setSelectedIndex(0);
@@ -417,14 +580,17 @@ public class ChatPanel extends JPanel {
     }
     
     private void createPrivateChatTab(String playerName) {
-        JPanel chatPanel = createMessagePanel();
+        JPanel chatPanel = createMessagePanel(playerName);
         JPanel messagesPanel = (JPanel) ((JScrollPane) chatPanel.getComponent(1)).getViewport().getView();
         
         privateChatPanels.put(playerName, chatPanel);
         privateMessagesPanels.put(playerName, messagesPanel);
-        chatHistory.put(playerName, new ArrayList<>());
+        // Messages may have arrived before the tab existed
+        chatHistory.computeIfAbsent(playerName, k -> new ArrayList<>());
+        redraw(playerName);
         
         tabbedPane.addTab("👤 " + playerName, chatPanel);
+        requestHistory(playerName, 0);
     }
     
     public void updateUserList(String[] users) {
@@ -437,17 +603,23 @@ public class ChatPanel extends JPanel {
                     userListModel.addElement(user);
                 }
             }
+            // A stop can be missed while reconnecting; nobody who left is still typing
+            Set<String> present = new HashSet<>(Arrays.asList(users));
+            for (Set<String> typers : typingIn.values()) typers.retainAll(present);
+            updateTypingLabel();
         });
     }
     
     // Inner class for chat message
     private static class ChatMessage {
+        long id; // server-assigned, 0 if unknown
         String sender;
         String content;
         LocalDateTime timestamp;
         boolean isSent;
         
-        ChatMessage(String sender, String content, LocalDateTime timestamp, boolean isSent) {
+        ChatMessage(long id, String sender, String content, LocalDateTime timestamp, boolean isSent) {
+            this.id = id;
             this.sender = sender;
             this.content = content;
             this.timestamp = timestamp;
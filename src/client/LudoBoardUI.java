@@ -1,15 +1,14 @@
 package client;
 
+import model.GameState;
 import model.Message;
+import model.MessageChannel;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Enhanced Ludo Board UI with integrated chat functionality
@@ -18,10 +17,13 @@ import java.util.Map;
 public class LudoBoardUI extends JFrame {
     private JLabel infoLabel;
     private JButton rollDiceButton;
-    private ObjectOutputStream out;
+    private final JButton[] tokenButtons = new JButton[GameState.TOKENS];
+    private MessageChannel out;
     private String playerName;
-    @SuppressWarnings("unused")
-    private Map<String, Integer> positions = new HashMap<>();
+    // Only touched on the Swing thread
+    private String[] seatNames = new String[GameState.SEATS];
+    private int[] tokens = new int[GameState.SEATS * GameState.TOKENS];
+    private volatile int stateSeq = -1; // -1 until the first keyframe arrives; read when resuming a session
     private BoardPanel boardPanel;
     private ChatPanel chatPanel;
     
@@ -33,7 +35,7 @@ public class LudoBoardUI extends JFrame {
     private static final Color TEXT_COLOR = new Color(255, 255, 255);
     private static final Color ACCENT_COLOR = new Color(64, 169, 255);
 
-    public LudoBoardUI(String playerName, ObjectOutputStream out) {
+    public LudoBoardUI(String playerName, MessageChannel out) {
         this.playerName = playerName;
         this.out = out;
 
@@ -51,6 +53,11 @@ public class LudoBoardUI extends JFrame {
         setVisible(true);
     }
     
+    /** Sequence number of the last board update applied, or -1 if out of sync. */
+    public int getStateSeq() {
+        return stateSeq;
+    }
+
     private void initializeComponents() {
         // Top panel - Game info and controls
         JPanel topPanel = createTopPanel();
@@ -148,13 +155,29 @@ public class LudoBoardUI extends JFrame {
         rollDiceButton.addActionListener((ActionEvent e) -> rollDice());
         panel.add(rollDiceButton);
         
+        // One button per token, enabled only while a move must be chosen
+        for (int t = 0; t < tokenButtons.length; t++) {
+            final int token = t;
+            JButton button = new JButton("Token " + (t + 1));
+            button.setFont(new Font("Segoe UI", Font.BOLD, 14));
+            button.setBackground(new Color(100, 100, 120));
+            button.setForeground(Color.WHITE);
+            button.setFocusPainted(false);
+            button.setBorderPainted(false);
+            button.setPreferredSize(new Dimension(100, 50));
+            button.setCursor(new Cursor(Cursor.HAND_CURSOR));
+            button.setEnabled(false);
+            button.addActionListener((ActionEvent e) -> moveToken(token));
+            tokenButtons[t] = button;
+            panel.add(button);
+        }
+        
         return panel;
     }
 
     private void rollDice() {
         try {
-            out.writeObject(new Message(Message.ROLL, "", playerName));
-            out.flush();
+            out.send(new Message(Message.ROLL, "", playerName));
             rollDiceButton.setEnabled(false);
             showMessage("Rolling dice...");
         } catch (IOException e) {
@@ -162,18 +185,112 @@ public class LudoBoardUI extends JFrame {
         }
     }
 
+    private void moveToken(int token) {
+        try {
+            out.send(new Message(Message.MOVE_TOKEN, String.valueOf(token), playerName));
+            setTokenChoices(0);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error sending move: " + e.getMessage());
+        }
+    }
+
+    /** Handles CHOOSE_TOKEN "dice|mask": enables the buttons of the tokens that may move. */
+    public void chooseToken(String content) {
+        try {
+            int bar = content.indexOf('|');
+            int dice = Integer.parseInt(content.substring(0, bar));
+            int mask = Integer.parseInt(content.substring(bar + 1));
+            showMessage("You rolled " + dice + " - pick a token to move");
+            SwingUtilities.invokeLater(() -> setTokenChoices(mask));
+        } catch (Exception ignored) {}
+    }
+
+    /** The server played this turn for us after the deadline. */
+    public void turnTimedOut() {
+        showMessage("⏰ Time's up - your turn was played automatically");
+        enableRoll(false);
+        SwingUtilities.invokeLater(() -> setTokenChoices(0));
+    }
+
+    public void gameOver(String winner) {
+        showMessage(winner.equals(playerName) ? "🏆 You won!" : "🏆 " + winner + " won the game");
+        enableRoll(false);
+        SwingUtilities.invokeLater(() -> setTokenChoices(0));
+    }
+
+    private void setTokenChoices(int mask) {
+        for (int t = 0; t < tokenButtons.length; t++) {
+            boolean enable = (mask & (1 << t)) != 0;
+            tokenButtons[t].setEnabled(enable);
+            tokenButtons[t].setBackground(enable ? PRIMARY_COLOR : new Color(100, 100, 120));
+        }
+    }
+
+    /**
+     * Applies a full keyframe "seq|name=p0,p1,p2,p3;...;" with one entry per seat
+     * (empty for a free seat), replacing the whole board.
+     */
     public void updatePositionsFromState(String stateText) {
-        Map<String, Integer> newPos = new HashMap<>();
         try {
-            String[] parts = stateText.split(",");
-            for (String p : parts) {
-                if (p.contains("=")) {
-                    String[] kv = p.trim().split("=");
-                    newPos.put(kv[0], Integer.parseInt(kv[1]));
+            int bar = stateText.indexOf('|');
+            int seq = Integer.parseInt(stateText.substring(0, bar));
+            String[] entries = stateText.substring(bar + 1).split(";", -1);
+            String[] names = new String[GameState.SEATS];
+            int[] positions = new int[GameState.SEATS * GameState.TOKENS];
+            for (int seat = 0; seat < GameState.SEATS && seat < entries.length; seat++) {
+                int eq = entries[seat].indexOf('=');
+                if (eq < 0) continue;
+                names[seat] = entries[seat].substring(0, eq);
+                String[] values = entries[seat].substring(eq + 1).split(",");
+                for (int t = 0; t < GameState.TOKENS; t++) {
+                    positions[seat * GameState.TOKENS + t] = Integer.parseInt(values[t]);
                 }
             }
-            positions = newPos;
-            boardPanel.updatePositions(newPos);
+            SwingUtilities.invokeLater(() -> {
+                stateSeq = seq;
+                seatNames = names;
+                tokens = positions;
+                boardPanel.updateBoard(seatNames, tokens);
+            });
+        } catch (Exception ignored) {}
+    }
+
+    /**
+     * Applies a delta "seq|seat.token=pos;..." listing every token a move touched.
+     * Deltas must arrive in sequence; after a gap they are ignored until the next
+     * keyframe resynchronises the board. A delta already applied (replayed by the server
+     * after a resume) is skipped.
+     */
+    public void applyStateDelta(String deltaText) {
+        try {
+            int bar = deltaText.indexOf('|');
+            int seq = Integer.parseInt(deltaText.substring(0, bar));
+            String[] entries = deltaText.substring(bar + 1).split(";");
+            int[] slots = new int[entries.length];
+            int[] values = new int[entries.length];
+            int count = 0;
+            for (String entry : entries) {
+                int dot = entry.indexOf('.');
+                int eq = entry.indexOf('=');
+                if (dot < 0 || eq < 0) continue;
+                int seat = Integer.parseInt(entry.substring(0, dot));
+                int token = Integer.parseInt(entry.substring(dot + 1, eq));
+                slots[count] = seat * GameState.TOKENS + token;
+                values[count++] = Integer.parseInt(entry.substring(eq + 1));
+            }
+            final int changed = count;
+            SwingUtilities.invokeLater(() -> {
+                if (stateSeq >= 0 && seq <= stateSeq) return; // duplicate
+                if (stateSeq < 0 || seq > stateSeq + 1) {
+                    stateSeq = -1; // out of sync, wait for a keyframe
+                    return;
+                }
+                stateSeq = seq;
+                for (int i = 0; i < changed; i++) {
+                    tokens[slots[i]] = values[i];
+                }
+                boardPanel.updateBoard(seatNames, tokens);
+            });
         } catch (Exception ignored) {}
     }
 
@@ -198,6 +315,19 @@ public class LudoBoardUI extends JFrame {
         chatPanel.receiveMessage(msg);
     }
     
+    public void typingChanged(Message msg) {
+        chatPanel.typingChanged(msg);
+    }
+    
+    public void chatHistoryLoaded(String content) {
+        chatPanel.historyLoaded(content);
+    }
+    
+    /** Fetches the latest page of public chat, e.g. after joining or resuming. */
+    public void requestChatHistory() {
+        chatPanel.requestHistory("Everyone", 0);
+    }
+    
     public void updateUserList(String[] users) {
         chatPanel.updateUserList(users);
     }
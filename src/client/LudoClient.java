@@ -4,70 +4,43 @@ import model.Message;
 import util.Constants;
 
 import java.io.*;
-import java.net.*;
 import java.util.Scanner;
 
 public class LudoClient {
+    // Resume attempts after a drop; together they outlast the server's default 60s seat grace period
+    private static final int RECONNECT_ATTEMPTS = 30;
+    private static final long RECONNECT_DELAY_MS = 2000;
+
     public static void main(String[] args) {
-        Socket socket = null;
-        ObjectOutputStream out = null;
-        ObjectInputStream in = null;
         Scanner sc = null;
 
         try {
-            socket = new Socket(Constants.HOST, Constants.SERVER_PORT);
-
-            // Create streams in correct order
-            out = new ObjectOutputStream(socket.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(socket.getInputStream());
+            // Binary frames by default; -Dludo.protocol=framed or object selects the older protocols
+            ReconnectingChannel channel = new ReconnectingChannel(Constants.HOST, Constants.SERVER_PORT, Constants.PROTOCOL);
+            channel.connect();
             sc = new Scanner(System.in);
 
             System.out.print("Enter your player name: ");
             String name = sc.nextLine();
+            System.out.print("Enter match id (blank for quick match, 1-4 for a quick match with that many players): ");
+            String matchId = sc.nextLine().trim();
+            if (matchId.matches("[1-4]")) matchId = "quick:" + matchId;
+            boolean watch = false;
+            if (!matchId.isEmpty() && !matchId.startsWith("quick")) {
+                System.out.print("Watch this match instead of playing? (y/N): ");
+                watch = sc.nextLine().trim().toLowerCase().startsWith("y");
+            }
 
-            // Send join message
-            out.writeObject(new Message("JOIN", "", name));
-            out.flush();
+            // Send join message; the content names the match to join (or watch)
+            channel.send(new Message(watch ? Message.SPECTATE : Message.JOIN, matchId, name));
 
             // Launch UI
-            LudoBoardUI ui = new LudoBoardUI(name, out);
+            LudoBoardUI ui = new LudoBoardUI(name, channel);
+            // Chat sent before we joined; answered once the JOIN has been handled
+            if (!watch) ui.requestChatHistory();
 
             // Thread to listen to server
-            ObjectInputStream finalIn = in;
-            new Thread(() -> {
-                try {
-                    while (true) {
-                        Message msg = (Message) finalIn.readObject();
-                        String msgType = msg.getType();
-                        
-                        switch (msgType) {
-                            case "INFO":
-                                ui.showMessage(msg.getContent());
-                                break;
-                            case "STATE":
-                                ui.updatePositionsFromState(msg.getContent());
-                                break;
-                            case "YOUR_TURN":
-                                ui.showMessage("Your turn! Click 🎲 Roll Dice");
-                                ui.enableRoll(true);
-                                break;
-                            case "MOVE":
-                                ui.showMessage(msg.getContent());
-                                break;
-                            case Message.PUBLIC_CHAT:
-                            case Message.PRIVATE_CHAT:
-                                ui.receiveChatMessage(msg);
-                                break;
-                            case Message.USER_LIST:
-                                ui.updateUserList(msg.getUserList());
-                                break;
-                        }
-                    }
-                } catch (Exception e) {
-                    ui.showMessage("Disconnected from server.");
-                }
-            }).start();
+            new Thread(() -> listen(channel, name, ui)).start();
 
         } catch (IOException e) {
             System.err.println("Connection error: " + e.getMessage());
@@ -75,4 +48,91 @@ public class LudoClient {
             e.printStackTrace();
         }
     }
+
+    /** Dispatches server messages to the UI, resuming the session whenever the connection drops. */
+    private static void listen(ReconnectingChannel channel, String name, LudoBoardUI ui) {
+        String session = null; // token issued on joining, needed to resume after a drop
+        while (true) {
+            try {
+                while (true) {
+                    Message msg = channel.receive();
+                    String msgType = msg.getType();
+                    
+                    switch (msgType) {
+                        case "INFO":
+                            ui.showMessage(msg.getContent());
+                            break;
+                        case Message.SESSION:
+                            String token = msg.getContent();
+                            session = token == null || token.isEmpty() ? null : token;
+                            break;
+                        case Message.STATE:
+                            ui.updatePositionsFromState(msg.getContent());
+                            break;
+                        case Message.STATE_DELTA:
+                            ui.applyStateDelta(msg.getContent());
+                            break;
+                        case "YOUR_TURN":
+                            String limit = msg.getContent();
+                            ui.showMessage("Your turn! Click 🎲 Roll Dice"
+                                    + (limit == null || limit.isEmpty() ? "" : " (" + Integer.parseInt(limit) / 1000 + "s)"));
+                            ui.enableRoll(true);
+                            break;
+                        case "MOVE":
+                            ui.showMessage(msg.getContent());
+                            break;
+                        case Message.CHOOSE_TOKEN:
+                            ui.chooseToken(msg.getContent());
+                            break;
+                        case Message.TURN_TIMEOUT:
+                            ui.turnTimedOut();
+                            break;
+                        case Message.GAME_OVER:
+                            ui.gameOver(msg.getContent());
+                            break;
+                        case Message.PUBLIC_CHAT:
+                        case Message.PRIVATE_CHAT:
+                            ui.receiveChatMessage(msg);
+                            break;
+                        case Message.USER_LIST:
+                            ui.updateUserList(msg.getUserList());
+                            break;
+                        case Message.HISTORY:
+                            ui.chatHistoryLoaded(msg.getContent());
+                            break;
+                        case Message.TYPING:
+                            ui.typingChanged(msg);
+                            break;
+                    }
+                }
+            } catch (Exception e) {
+                if (session == null || !reconnect(channel, name, session, ui)) {
+                    ui.showMessage("Disconnected from server.");
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Reopens the connection and asks to resume from the last board update the UI applied. */
+    private static boolean reconnect(ReconnectingChannel channel, String name, String session, LudoBoardUI ui) {
+        ui.enableRoll(false);
+        for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS; attempt++) {
+            ui.showMessage("Connection lost, reconnecting (attempt " + attempt + ")...");
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+                channel.connect();
+                channel.send(new Message(Message.RESUME, session + "|" + ui.getStateSeq(), name));
+                ui.requestChatHistory(); // chat missed while away
+                return true;
+            } catch (IOException e) {
+                // server still unreachable; try again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        channel.close();
+        return false;
+    }
 }
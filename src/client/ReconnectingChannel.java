@@ -0,0 +1,65 @@
+package client;
+
+import model.Message;
+import model.MessageChannel;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * The client's link to the server. After a drop, connect() opens a fresh socket
+ * behind the same object, so the UI keeps sending through it while the listener
+ * resumes the session.
+ */
+public class ReconnectingChannel implements MessageChannel {
+    private final String host;
+    private final int port;
+    private final String protocol;
+    private volatile Socket socket;
+    private volatile MessageChannel channel;
+
+    public ReconnectingChannel(String host, int port, String protocol) {
+        this.host = host;
+        this.port = port;
+        this.protocol = protocol;
+    }
+
+    /** Opens a new connection, closing the previous one. */
+    public void connect() throws IOException {
+        close();
+        Socket s = new Socket(host, port);
+        try {
+            channel = MessageChannel.open(s, protocol);
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+    }
+
+    @Override
+    public void send(Message msg) throws IOException {
+        MessageChannel c = channel;
+        if (c == null) throw new IOException("Not connected");
+        c.send(msg);
+    }
+
+    @Override
+    public Message receive() throws IOException {
+        MessageChannel c = channel;
+        if (c == null) throw new IOException("Not connected");
+        return c.receive();
+    }
+
+    @Override
+    public void close() {
+        Socket s = socket;
+        channel = null;
+        socket = null;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
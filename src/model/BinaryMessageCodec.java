@@ -0,0 +1,104 @@
+package model;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Compact binary frame payload:
+ *   version(1) opcode(1) flags(1) timestamp(varlong epoch millis)
+ *   [type string if opcode is 0] [content] [playerName] [recipient] [userList] [id varlong]
+ * Strings are a varint byte length followed by UTF-8; optional fields are present
+ * only when their flag bit is set.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final byte VERSION = 1;
+
+    private static final int HAS_CONTENT = 1;
+    private static final int HAS_PLAYER = 1 << 1;
+    private static final int HAS_RECIPIENT = 1 << 2;
+    private static final int HAS_USER_LIST = 1 << 3;
+    private static final int HAS_ID = 1 << 4;
+
+    // Opcode index = position in this table; 0 means "type sent as a string".
+    // Only append to this table: reordering changes the wire format.
+    private static final String[] OPCODES = {
+            null,
+            Message.JOIN, Message.INFO, Message.STATE, Message.YOUR_TURN, Message.MOVE,
+            Message.ROLL, Message.PUBLIC_CHAT, Message.PRIVATE_CHAT, Message.USER_LIST, Message.TYPING,
+            Message.STATE_DELTA, Message.CHOOSE_TOKEN, Message.MOVE_TOKEN, Message.GAME_OVER,
+            Message.TURN_TIMEOUT, Message.SPECTATE, Message.SESSION, Message.RESUME, Message.HISTORY
+    };
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    @Override
+    public byte[] encode(Message msg) throws IOException {
+        ByteWriter w = new ByteWriter(64);
+        int opcode = opcodeOf(msg.getType());
+        int flags = (msg.getContent() != null && !msg.getContent().isEmpty() ? HAS_CONTENT : 0)
+                | (msg.getPlayerName() != null ? HAS_PLAYER : 0)
+                | (msg.getRecipient() != null ? HAS_RECIPIENT : 0)
+                | (msg.getUserList() != null ? HAS_USER_LIST : 0)
+                | (msg.getId() != 0 ? HAS_ID : 0);
+
+        w.writeByte(VERSION);
+        w.writeByte(opcode);
+        w.writeByte(flags);
+        LocalDateTime ts = msg.getTimestamp();
+        w.writeVarLong(ts != null ? ts.atZone(ZONE).toInstant().toEpochMilli() : 0);
+        if (opcode == 0) w.writeString(msg.getType());
+        if ((flags & HAS_CONTENT) != 0) w.writeString(msg.getContent());
+        if ((flags & HAS_PLAYER) != 0) w.writeString(msg.getPlayerName());
+        if ((flags & HAS_RECIPIENT) != 0) w.writeString(msg.getRecipient());
+        if ((flags & HAS_USER_LIST) != 0) {
+            String[] users = msg.getUserList();
+            w.writeVarLong(users.length);
+            for (String user : users) w.writeString(user);
+        }
+        if ((flags & HAS_ID) != 0) w.writeVarLong(msg.getId());
+        return w.toByteArray();
+    }
+
+    @Override
+    public Message decode(byte[] data, int offset, int length) throws IOException {
+        ByteReader r = new ByteReader(data, offset, offset + length);
+        int version = r.readByte();
+        if (version != VERSION) throw new IOException("Unsupported protocol version " + version);
+
+        int opcode = r.readByte();
+        int flags = r.readByte();
+        long millis = r.readVarLong();
+        String type;
+        if (opcode == 0) {
+            type = r.readString();
+        } else if (opcode < OPCODES.length) {
+            type = OPCODES[opcode];
+        } else {
+            throw new IOException("Unknown opcode " + opcode);
+        }
+        String content = (flags & HAS_CONTENT) != 0 ? r.readString() : "";
+        String player = (flags & HAS_PLAYER) != 0 ? r.readString() : null;
+        String recipient = (flags & HAS_RECIPIENT) != 0 ? r.readString() : null;
+
+        Message msg = new Message(type, content, player, recipient);
+        msg.setTimestamp(millis != 0 ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE) : null);
+        if ((flags & HAS_USER_LIST) != 0) {
+            int count = (int) r.readVarLong();
+            if (count > length) throw new IOException("Corrupt user list");
+            String[] users = new String[count];
+            for (int i = 0; i < count; i++) users[i] = r.readString();
+            msg.setUserList(users);
+        }
+        if ((flags & HAS_ID) != 0) msg.setId(r.readVarLong());
+        return msg;
+    }
+
+    private static int opcodeOf(String type) {
+        for (int i = 1; i < OPCODES.length; i++) {
+            if (OPCODES[i].equals(type)) return i;
+        }
+        return 0;
+    }
+}
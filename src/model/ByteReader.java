@@ -0,0 +1,53 @@
+package model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** Bounds-checked cursor over encoded bytes (codec frames, journal records). */
+public class ByteReader {
+    private final byte[] buf;
+    private int pos;
+    private final int end;
+
+    public ByteReader(byte[] buf, int pos, int end) {
+        this.buf = buf;
+        this.pos = pos;
+        this.end = end;
+    }
+
+    public int remaining() {
+        return end - pos;
+    }
+
+    public int readByte() throws IOException {
+        if (pos >= end) throw new IOException("Truncated data");
+        return buf[pos++] & 0xFF;
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public byte[] readBytes() throws IOException {
+        long len = readVarLong();
+        if (len < 0 || len > end - pos) throw new IOException("Truncated bytes");
+        byte[] out = new byte[(int) len];
+        System.arraycopy(buf, pos, out, 0, (int) len);
+        pos += (int) len;
+        return out;
+    }
+
+    public String readString() throws IOException {
+        long len = readVarLong();
+        if (len < 0 || len > end - pos) throw new IOException("Truncated string");
+        String s = new String(buf, pos, (int) len, StandardCharsets.UTF_8);
+        pos += (int) len;
+        return s;
+    }
+}
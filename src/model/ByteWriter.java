@@ -0,0 +1,56 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+
+/** Growable byte array with varint helpers, shared by the binary codec and the event journal. */
+public class ByteWriter {
+    private byte[] buf;
+    private int size;
+
+    public ByteWriter(int capacity) {
+        buf = new byte[capacity];
+    }
+
+    public void writeByte(int b) {
+        ensure(1);
+        buf[size++] = (byte) b;
+    }
+
+    public void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[size++] = (byte) v;
+    }
+
+    public void writeString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, size, bytes.length);
+        size += bytes.length;
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, size, bytes.length);
+        size += bytes.length;
+    }
+
+    public byte[] toByteArray() {
+        byte[] out = new byte[size];
+        System.arraycopy(buf, 0, out, 0, size);
+        return out;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, size + extra)];
+            System.arraycopy(buf, 0, bigger, 0, size);
+            buf = bigger;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package model;
+
+import util.Constants;
+import java.io.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Length-prefixed frames: a 4-byte big-endian payload length followed by the codec payload. */
+public class FramedMessageChannel implements MessageChannel {
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private volatile MessageCodec codec; // null until detected from the peer's first frame
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public FramedMessageChannel(InputStream input, OutputStream output, MessageCodec codec) {
+        this.in = new DataInputStream(input instanceof BufferedInputStream ? input : new BufferedInputStream(input));
+        this.out = new DataOutputStream(new BufferedOutputStream(output));
+        this.codec = codec;
+    }
+
+    @Override
+    public void send(Message msg) throws IOException {
+        writeLock.lock();
+        try {
+            out.write(msg.toFrame(codec));
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void write(Message msg) throws IOException {
+        writeLock.lock();
+        try {
+            out.write(msg.toFrame(codec));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeLock.lock();
+        try {
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Message receive() throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > Constants.MAX_FRAME_SIZE) {
+            throw new IOException("Frame too large: " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        if (codec == null) {
+            if (length == 0) throw new IOException("Empty frame");
+            codec = MessageCodec.detect(payload, 0);
+        }
+        return codec.decode(payload, 0, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+        out.close();
+    }
+}
@@ -1,28 +1,255 @@
 package model;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.*;
+import java.util.Arrays;
 
+/**
+ * Ludo rules engine on a compact primitive board.
+ *
+ * Each of the 4 seats has 4 tokens. A token's position is its progress along its own
+ * seat's path: IN_BASE (-1), 0..50 on the shared 52-square track (0 is the seat's start
+ * square), 51..55 in its home column, and FINISHED (56). Absolute track squares are
+ * (seat * 13 + progress) % 52.
+ *
+ * Rules: a 6 is needed to leave base; moves must not overshoot FINISHED; landing on an
+ * opponent outside a safe square sends all their tokens there back to base; rolling a 6
+ * or capturing earns another roll; the first seat with all tokens home wins.
+ *
+ * Move generation and application do not allocate, so bots and simulations can run
+ * the same code as the server at full speed.
+ */
 public class GameState implements Serializable {
-    private Map<String, Player> players = new LinkedHashMap<>();
-    private String currentTurn;
+    private static final long serialVersionUID = 2L;
 
-    public void addPlayer(Player p) {
-        players.put(p.getName(), p);
-        if (currentTurn == null) currentTurn = p.getName();
+    public static final int SEATS = 4;
+    public static final int TOKENS = 4;
+    public static final int TRACK_LENGTH = 52;
+    public static final int LAST_TRACK = 50;
+    public static final int FINISHED = 56;
+    public static final int IN_BASE = -1;
+
+    // move() result flags
+    public static final int MOVED = 1;
+    public static final int CAPTURED = 1 << 1;
+    public static final int TOKEN_FINISHED = 1 << 2;
+    public static final int WON = 1 << 3;
+    public static final int EXTRA_TURN = 1 << 4;
+
+    // Start squares and stars; bit n set = absolute square n is safe
+    private static final long SAFE_SQUARES = (1L << 0) | (1L << 8) | (1L << 13) | (1L << 21)
+            | (1L << 26) | (1L << 34) | (1L << 39) | (1L << 47);
+
+    private final String[] names = new String[SEATS];
+    private final int[] tokens = new int[SEATS * TOKENS];
+    private int currentSeat = -1;
+    private int winner = -1;
+
+    // Tokens changed by the last move (seat * TOKENS + token), for building state deltas
+    private final int[] changed = new int[SEATS * TOKENS];
+    private int changedCount = 0;
+
+    public GameState() {
+        Arrays.fill(tokens, IN_BASE);
+    }
+
+    /** Seats a player in the first free seat. Returns the seat, or -1 if the table is full. */
+    public int addPlayer(String name) {
+        for (int seat = 0; seat < SEATS; seat++) {
+            if (names[seat] == null) {
+                names[seat] = name;
+                for (int t = 0; t < TOKENS; t++) tokens[seat * TOKENS + t] = IN_BASE;
+                if (currentSeat < 0) currentSeat = seat;
+                return seat;
+            }
+        }
+        return -1;
+    }
+
+    /** Frees a seat. If it was that seat's turn, the turn passes on. Returns the seat or -1. */
+    public int removePlayer(String name) {
+        int seat = seatOf(name);
+        if (seat < 0) return -1;
+        names[seat] = null;
+        for (int t = 0; t < TOKENS; t++) tokens[seat * TOKENS + t] = IN_BASE;
+        if (currentSeat == seat) currentSeat = nextSeat(seat);
+        return seat;
     }
 
-    public synchronized void movePlayer(String playerName, int dice) {
-        players.get(playerName).move(dice);
-        nextTurn();
+    public int seatOf(String name) {
+        for (int seat = 0; seat < SEATS; seat++) {
+            if (name.equals(names[seat])) return seat;
+        }
+        return -1;
     }
 
-    private void nextTurn() {
-        List<String> keys = new ArrayList<>(players.keySet());
-        int i = keys.indexOf(currentTurn);
-        currentTurn = keys.get((i + 1) % keys.size());
+    public String nameAt(int seat) { return names[seat]; }
+
+    public int getPlayerCount() {
+        int count = 0;
+        for (String n : names) if (n != null) count++;
+        return count;
     }
 
-    public Map<String, Player> getPlayers() { return players; }
-    public String getCurrentTurn() { return currentTurn; }
+    public int getCurrentSeat() { return currentSeat; }
+
+    public String getCurrentTurn() { return currentSeat >= 0 ? names[currentSeat] : null; }
+
+    public int getToken(int seat, int token) { return tokens[seat * TOKENS + token]; }
+
+    public boolean isGameOver() { return winner >= 0; }
+
+    public int getWinner() { return winner; }
+
+    /** Bitmask of the seat's tokens (bit t = token t) that can move with this dice value. */
+    public int legalMoves(int seat, int dice) {
+        int mask = 0;
+        for (int t = 0; t < TOKENS; t++) {
+            int p = tokens[seat * TOKENS + t];
+            if (p == IN_BASE ? dice == 6 : p + dice <= FINISHED) mask |= 1 << t;
+        }
+        return mask;
+    }
+
+    /** The progress a token would reach with this dice value (the caller checks legality). */
+    public int target(int seat, int token, int dice) {
+        int p = tokens[seat * TOKENS + token];
+        return p == IN_BASE ? 0 : p + dice;
+    }
+
+    /** Number of opponent tokens a move would capture. */
+    public int capturesFor(int seat, int token, int dice) {
+        int to = target(seat, token, dice);
+        if (to > LAST_TRACK) return 0;
+        int square = absoluteSquare(seat, to);
+        if (isSafeSquare(square)) return 0;
+        int count = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            int s = i / TOKENS;
+            if (s != seat && names[s] != null && tokens[i] >= 0 && tokens[i] <= LAST_TRACK
+                    && absoluteSquare(s, tokens[i]) == square) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Moves a token for the current seat and advances the turn.
+     * Returns a combination of the result flags, or 0 if the move is not legal.
+     */
+    public int move(int seat, int token, int dice) {
+        changedCount = 0;
+        if (seat != currentSeat || winner >= 0 || (legalMoves(seat, dice) & (1 << token)) == 0) return 0;
+
+        int result = MOVED;
+        int to = target(seat, token, dice);
+        tokens[seat * TOKENS + token] = to;
+        changed[changedCount++] = seat * TOKENS + token;
+
+        if (to <= LAST_TRACK) {
+            int square = absoluteSquare(seat, to);
+            if (!isSafeSquare(square)) {
+                for (int i = 0; i < tokens.length; i++) {
+                    int s = i / TOKENS;
+                    if (s != seat && tokens[i] >= 0 && tokens[i] <= LAST_TRACK
+                            && absoluteSquare(s, tokens[i]) == square) {
+                        tokens[i] = IN_BASE;
+                        changed[changedCount++] = i;
+                        result |= CAPTURED;
+                    }
+                }
+            }
+        } else if (to == FINISHED) {
+            result |= TOKEN_FINISHED;
+            if (allFinished(seat)) {
+                winner = seat;
+                return result | WON;
+            }
+        }
+
+        if (dice == 6 || (result & CAPTURED) != 0) {
+            result |= EXTRA_TURN;
+        } else {
+            currentSeat = nextSeat(seat);
+        }
+        return result;
+    }
+
+    /** Ends the current seat's turn without a move (no legal move). A 6 still earns another roll. */
+    public void passTurn(int dice) {
+        changedCount = 0;
+        if (dice != 6 && winner < 0) currentSeat = nextSeat(currentSeat);
+    }
+
+    public int getChangedCount() { return changedCount; }
+
+    /** Index (seat * TOKENS + token) of the i-th token changed by the last move. */
+    public int getChanged(int i) { return changed[i]; }
+
+    /** Deep copy, for search and simulation. */
+    public GameState copy() {
+        GameState c = new GameState();
+        System.arraycopy(names, 0, c.names, 0, SEATS);
+        System.arraycopy(tokens, 0, c.tokens, 0, tokens.length);
+        c.currentSeat = currentSeat;
+        c.winner = winner;
+        return c;
+    }
+
+    /** True if both states have the same tokens, seat to move and winner. */
+    public boolean samePosition(GameState other) {
+        return currentSeat == other.currentSeat && winner == other.winner && Arrays.equals(tokens, other.tokens);
+    }
+
+    /** Writes the board for a snapshot: seats, token progress, seat to move and winner. */
+    public void writeTo(ByteWriter w) {
+        for (int seat = 0; seat < SEATS; seat++) {
+            w.writeByte(names[seat] != null ? 1 : 0);
+            if (names[seat] == null) continue;
+            w.writeString(names[seat]);
+            for (int t = 0; t < TOKENS; t++) w.writeVarLong(tokens[seat * TOKENS + t] + 1);
+        }
+        w.writeVarLong(currentSeat + 1);
+        w.writeVarLong(winner + 1);
+    }
+
+    /** Reads a board written by writeTo. */
+    public static GameState readFrom(ByteReader r) throws IOException {
+        GameState s = new GameState();
+        for (int seat = 0; seat < SEATS; seat++) {
+            if (r.readByte() == 0) continue;
+            s.names[seat] = r.readString();
+            for (int t = 0; t < TOKENS; t++) {
+                int p = (int) r.readVarLong() - 1;
+                if (p < IN_BASE || p > FINISHED) throw new IOException("Bad token position " + p);
+                s.tokens[seat * TOKENS + t] = p;
+            }
+        }
+        s.currentSeat = (int) r.readVarLong() - 1;
+        s.winner = (int) r.readVarLong() - 1;
+        return s;
+    }
+
+    private boolean allFinished(int seat) {
+        for (int t = 0; t < TOKENS; t++) {
+            if (tokens[seat * TOKENS + t] != FINISHED) return false;
+        }
+        return true;
+    }
+
+    private int nextSeat(int seat) {
+        for (int i = 1; i <= SEATS; i++) {
+            int s = (seat + i) % SEATS;
+            if (names[s] != null) return s;
+        }
+        return -1;
+    }
+
+    /** Absolute track square (0..51) of a token at this progress on the shared track. */
+    public static int absoluteSquare(int seat, int progress) {
+        return (seat * 13 + progress) % TRACK_LENGTH;
+    }
+
+    public static boolean isSafeSquare(int square) {
+        return (SAFE_SQUARES & (1L << square)) != 0;
+    }
 }
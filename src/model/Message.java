@@ -1,6 +1,8 @@
 package model;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -10,14 +12,25 @@ public class Message implements Serializable {
     // Message types
     public static final String JOIN = "JOIN";
     public static final String INFO = "INFO";
-    public static final String STATE = "STATE";
-    public static final String YOUR_TURN = "YOUR_TURN";
+    public static final String STATE = "STATE";             // full keyframe "seq|name=p0,p1,p2,p3;..." per seat
+    public static final String STATE_DELTA = "STATE_DELTA"; // changed tokens only "seq|seat.token=pos;..."
+    public static final String YOUR_TURN = "YOUR_TURN";     // content: milliseconds allowed for the turn, or empty
     public static final String MOVE = "MOVE";
     public static final String ROLL = "ROLL";
     public static final String PUBLIC_CHAT = "PUBLIC_CHAT";
     public static final String PRIVATE_CHAT = "PRIVATE_CHAT";
     public static final String USER_LIST = "USER_LIST";
     public static final String TYPING = "TYPING";
+    public static final String CHOOSE_TOKEN = "CHOOSE_TOKEN"; // server asks which token: "dice|legalMask"
+    public static final String MOVE_TOKEN = "MOVE_TOKEN";     // client's pick: token index 0-3
+    public static final String GAME_OVER = "GAME_OVER";       // content is the winner's name
+    public static final String TURN_TIMEOUT = "TURN_TIMEOUT"; // the player's turn expired and was played for them
+    public static final String SPECTATE = "SPECTATE";         // handshake instead of JOIN: watch the match named in content
+    public static final String SESSION = "SESSION";           // session token issued on joining; empty if a resume was refused
+    public static final String RESUME = "RESUME";             // handshake instead of JOIN after a drop: "token|lastSeq"
+    // Client asks for "conversation|beforeId|limit" ("" = public chat); the server replies with up to
+    // limit chat messages older than beforeId (0 = newest), then HISTORY "conversation|hasMore"
+    public static final String HISTORY = "HISTORY";
     
     private String type;
     private String content;
@@ -25,6 +38,11 @@ public class Message implements Serializable {
     private String recipient;  // For private chat messages
     private LocalDateTime timestamp;
     private String[] userList; // For user list updates
+    private long id;           // Chat message id, assigned by the server per match; 0 if none
+
+    // Encoded frames, cached so a broadcast is encoded once rather than once per recipient
+    private transient volatile byte[] binaryFrame;
+    private transient volatile byte[] serializedFrame;
     
     // Constructor for game messages (backward compatible)
     public Message(String type, String content, String playerName) {
@@ -49,9 +67,30 @@ public class Message implements Serializable {
     public String getRecipient() { return recipient; }
     public LocalDateTime getTimestamp() { return timestamp; }
     public String[] getUserList() { return userList; }
+    public long getId() { return id; }
     
+    public void setPlayerName(String playerName) { this.playerName = playerName; }
     public void setRecipient(String recipient) { this.recipient = recipient; }
     public void setUserList(String[] userList) { this.userList = userList; }
+    public void setId(long id) { this.id = id; }
+    void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+    
+    /**
+     * Returns this message as a complete length-prefixed frame for the given codec,
+     * encoding it at most once per codec. The returned array is shared between all
+     * recipients and must not be modified; nor should the message be after it is sent.
+     */
+    public byte[] toFrame(MessageCodec codec) throws IOException {
+        boolean binary = codec == MessageCodec.BINARY;
+        byte[] frame = binary ? binaryFrame : codec == MessageCodec.SERIALIZED ? serializedFrame : null;
+        if (frame == null) {
+            byte[] payload = codec.encode(this);
+            frame = ByteBuffer.allocate(4 + payload.length).putInt(payload.length).put(payload).array();
+            if (binary) binaryFrame = frame;
+            else if (codec == MessageCodec.SERIALIZED) serializedFrame = frame;
+        }
+        return frame;
+    }
     
     public String getFormattedTimestamp() {
         if (timestamp != null) {
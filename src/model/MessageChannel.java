@@ -0,0 +1,60 @@
+package model;
+
+import java.io.*;
+import java.net.Socket;
+
+/**
+ * A blocking, bidirectional stream of Messages over a socket.
+ * Used by the client and by the thread-per-client server transport.
+ */
+public interface MessageChannel extends Closeable {
+    String OBJECT = "object";
+    String FRAMED = "framed";
+    String BINARY = "binary";
+
+    /** Writes a message and flushes it to the socket. */
+    void send(Message msg) throws IOException;
+
+    /** Buffers a message without flushing it, so several can leave in one socket write. */
+    default void write(Message msg) throws IOException {
+        send(msg);
+    }
+
+    /** Pushes messages buffered by write() to the socket. */
+    default void flush() throws IOException {}
+
+    Message receive() throws IOException;
+
+    /** Opens a client-side channel using the given protocol name. */
+    static MessageChannel open(Socket socket, String protocol) throws IOException {
+        if (OBJECT.equals(protocol)) {
+            return new ObjectMessageChannel(socket.getInputStream(), socket.getOutputStream());
+        }
+        MessageCodec codec = FRAMED.equals(protocol) ? MessageCodec.SERIALIZED : MessageCodec.BINARY;
+        return new FramedMessageChannel(socket.getInputStream(), socket.getOutputStream(), codec);
+    }
+
+    /**
+     * Opens a server-side channel, detecting the protocol from the first bytes the
+     * client sends. Object streams always begin with the serialization magic 0xACED;
+     * for framed clients the payload codec is detected from the first frame.
+     */
+    static MessageChannel accept(Socket socket) throws IOException {
+        return accept(socket.getInputStream(), socket.getOutputStream());
+    }
+
+    /** As accept(Socket), over the given streams (e.g. an output stream that counts socket writes). */
+    static MessageChannel accept(InputStream input, OutputStream output) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(input);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        if (b1 < 0 || b2 < 0) throw new EOFException();
+        in.reset();
+
+        if (b1 == 0xAC && b2 == 0xED) {
+            return new ObjectMessageChannel(in, output);
+        }
+        return new FramedMessageChannel(in, output, null);
+    }
+}
@@ -0,0 +1,24 @@
+package model;
+
+import java.io.IOException;
+
+/**
+ * Converts a Message to and from the payload of a single frame.
+ * Framing (the length prefix) is handled by the caller.
+ */
+public interface MessageCodec {
+    MessageCodec SERIALIZED = new SerializedMessageCodec();
+    MessageCodec BINARY = new BinaryMessageCodec();
+
+    byte[] encode(Message msg) throws IOException;
+
+    Message decode(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Picks the codec a peer is using from the first payload it sent.
+     * Serialized payloads start with the stream magic 0xACED; binary ones with the version byte.
+     */
+    static MessageCodec detect(byte[] data, int offset) {
+        return (data[offset] & 0xFF) == 0xAC ? SERIALIZED : BINARY;
+    }
+}
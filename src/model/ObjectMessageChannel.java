@@ -0,0 +1,100 @@
+package model;
+
+import util.Constants;
+import java.io.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The original protocol: one ObjectOutputStream/ObjectInputStream pair for the whole session.
+ * Both streams keep a handle table of every object they have seen, so the writer resets
+ * the stream every OBJECT_STREAM_RESET_MESSAGES messages or OBJECT_STREAM_RESET_BYTES bytes;
+ * the reset marker clears the reader's table too, keeping long sessions at bounded memory.
+ */
+public class ObjectMessageChannel implements MessageChannel {
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+    private final CountingOutputStream counter;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private int sentSinceReset = 0;
+
+    public ObjectMessageChannel(InputStream input, OutputStream output) throws IOException {
+        // Create streams in correct order: the output header must be flushed before reading ours
+        counter = new CountingOutputStream(new BufferedOutputStream(output));
+        out = new ObjectOutputStream(counter);
+        out.flush();
+        in = new ObjectInputStream(input);
+    }
+
+    @Override
+    public void send(Message msg) throws IOException {
+        writeLock.lock();
+        try {
+            write(msg);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void write(Message msg) throws IOException {
+        writeLock.lock();
+        try {
+            out.writeObject(msg);
+            if (++sentSinceReset >= Constants.OBJECT_STREAM_RESET_MESSAGES
+                    || counter.count >= Constants.OBJECT_STREAM_RESET_BYTES) {
+                out.reset();
+                sentSinceReset = 0;
+                counter.count = 0;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeLock.lock();
+        try {
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Message receive() throws IOException {
+        try {
+            return (Message) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid message", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+        out.close();
+    }
+
+    /** Counts bytes written since the last stream reset. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package model;
+
+import java.io.*;
+
+/**
+ * Frame payload codec that uses standard Java serialization.
+ * Every frame carries its own stream header, so frames can be decoded independently.
+ */
+public class SerializedMessageCodec implements MessageCodec {
+
+    @Override
+    public byte[] encode(Message msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(msg);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Message decode(byte[] data, int offset, int length) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return (Message) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid message frame", e);
+        }
+    }
+}
@@ -1,31 +1,66 @@
 package server;
 
+import model.GameState;
 
-import java.util.Random;
-
-public class BotPlayer implements Runnable {
+/**
+ * A computer-controlled seat. Bots have no thread of their own: GameManager
+ * schedules takeTurn() on the match's shard scheduler when the bot's turn begins,
+ * rolls for the bot and asks it which token to move. The answer goes back through
+ * GameManager.submitBotChoice, so a searching strategy never holds the game lock.
+ */
+public class BotPlayer {
     private String name;
     private GameManager gameManager;
-    private Random rand = new Random();
+    private final BotStrategy strategy;
 
     public BotPlayer(String name, GameManager gameManager) {
+        this(name, gameManager, BotStrategy.fromConfig());
+    }
+
+    public BotPlayer(String name, GameManager gameManager, BotStrategy strategy) {
         this.name = name;
         this.gameManager = gameManager;
+        this.strategy = strategy;
+    }
+
+    /** Rolls and moves; a no-op if the match closed or the turn moved on meanwhile. */
+    public void takeTurn() {
+        if (gameManager.isClosed()) return;
+        try {
+            gameManager.botMove(name);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Starts choosing one of the legal tokens in mask on a snapshot of the board. */
+    public void chooseToken(GameState snapshot, int seat, int dice, int mask) {
+        strategy.chooseTokenAsync(snapshot, seat, dice, mask,
+                token -> gameManager.submitBotChoice(name, dice, token));
     }
 
-    @Override
-    public void run() {
-        while (true) {
-            try {
-                Thread.sleep(2000);
-                if (gameManager.isBotTurn(name)) {
-                    int dice = rand.nextInt(6) + 1;
-                    gameManager.botMove(name, dice);
-                }
-            } catch (InterruptedException e) {
-                break;
-            } catch (Exception ignored) {}
+    /**
+     * Simple greedy policy: capture if possible, then bring a token home, then leave
+     * base, then prefer safe squares, and otherwise advance the most advanced token.
+     */
+    public static int greedyChoice(GameState state, int seat, int dice, int mask) {
+        int best = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int t = 0; t < GameState.TOKENS; t++) {
+            if ((mask & (1 << t)) == 0) continue;
+            int from = state.getToken(seat, t);
+            int to = state.target(seat, t, dice);
+            int score = from;
+            if (state.capturesFor(seat, t, dice) > 0) score += 1000;
+            if (to == GameState.FINISHED) score += 500;
+            if (from == GameState.IN_BASE) score += 300;
+            if (to > GameState.LAST_TRACK || GameState.isSafeSquare(GameState.absoluteSquare(seat, to))) score += 100;
+            if (score > bestScore) {
+                bestScore = score;
+                best = t;
+            }
         }
+        return best;
     }
 
     public String getName() {
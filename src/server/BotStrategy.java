@@ -0,0 +1,32 @@
+package server;
+
+import model.GameState;
+import util.Constants;
+
+import java.util.function.IntConsumer;
+
+/**
+ * How a bot picks which of its legal tokens to move.
+ */
+public interface BotStrategy {
+    BotStrategy GREEDY = BotPlayer::greedyChoice;
+
+    /** Picks one of the legal tokens in mask for the seat to move, blocking until decided. */
+    int chooseToken(GameState state, int seat, int dice, int mask);
+
+    /**
+     * Picks a token without tying up the caller; done receives the token on whichever
+     * thread finished the decision. The default decides inline.
+     */
+    default void chooseTokenAsync(GameState state, int seat, int dice, int mask, IntConsumer done) {
+        done.accept(chooseToken(state, seat, dice, mask));
+    }
+
+    /** The strategy named by -Dludo.bot. Searching strategies keep state, so each bot gets its own. */
+    static BotStrategy fromConfig() {
+        if ("mcts".equalsIgnoreCase(Constants.BOT_STRATEGY)) {
+            return new MctsStrategy(Constants.BOT_SEARCH_MS);
+        }
+        return GREEDY;
+    }
+}
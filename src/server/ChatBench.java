@@ -0,0 +1,188 @@
+package server;
+
+import model.Message;
+import model.Player;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention benchmark for chat against game actions in one match. A driver thread plays
+ * all four seats of an in-process GameManager as fast as it can, timing every roll and
+ * token pick through handleMessage, while chat threads send public chat into the same
+ * match through handleMessage nonstop. Runs once without chat and once with it, so the
+ * action latencies show what a chat burst adds to rolls and turn handoff.
+ *
+ * Usage: java server.ChatBench [chatThreads] [seconds]
+ *   chatThreads  threads sending chat during the second run (default 4)
+ *   seconds      length of each run (default 10)
+ *
+ * Connections are in-memory stubs, so the numbers are the game's own cost, not I/O.
+ */
+public class ChatBench {
+    private static final int SEATS = 4;
+    private static final int MAX_SAMPLES = 1 << 22;
+
+    public static void main(String[] args) throws InterruptedException {
+        int chatThreads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        PrintStream out = System.out;
+        // The game logs every chat message and turn; keep that off the console and out of the numbers' way
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new Workers.NamedThreadFactory("bench-scheduler"));
+        TimingWheel turnTimers = new TimingWheel(100, 64, "bench-turn-timers");
+        try {
+            out.println("[BENCH] " + seconds + " s per run, " + SEATS + " seats, all actions from one driver thread");
+            out.println(run(0, seconds, scheduler, turnTimers));
+            out.println(run(chatThreads, seconds, scheduler, turnTimers));
+        } finally {
+            scheduler.shutdownNow();
+            System.setOut(out);
+        }
+    }
+
+    private static String run(int chatThreads, double seconds, ScheduledExecutorService scheduler,
+                              TimingWheel turnTimers) throws InterruptedException {
+        Driver driver = new Driver(scheduler, turnTimers);
+        driver.newMatch();
+        LongAdder chats = new LongAdder();
+        Thread[] chatters = new Thread[chatThreads];
+        for (int i = 0; i < chatThreads; i++) {
+            int seat = i % SEATS;
+            chatters[i] = new Thread(() -> chat(driver, seat, chats), "bench-chat-" + i);
+            chatters[i].start();
+        }
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        driver.play(end);
+        driver.running = false;
+        for (Thread t : chatters) t.join();
+        driver.match.close();
+
+        long[] samples = Arrays.copyOf(driver.samples, driver.count);
+        Arrays.sort(samples);
+        return String.format("[BENCH] %d chat threads: %.0f chat/s, %.0f actions/s, action latency"
+                        + " p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                chatThreads, chats.sum() / seconds, driver.count / seconds, percentile(samples, 0.50),
+                percentile(samples, 0.99), percentile(samples, 0.999), percentile(samples, 1.0));
+    }
+
+    /** Sends public chat as one seat's player until the run ends. */
+    private static void chat(Driver driver, int seat, LongAdder chats) {
+        Player player = driver.players[seat];
+        long n = 0;
+        try {
+            while (driver.running) {
+                driver.match.handleMessage(new Message(Message.PUBLIC_CHAT, "chat message " + n++, player.getName()), player);
+                chats.increment();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1000.0;
+    }
+
+    /** Plays every seat of the current match, starting a new one when it ends. */
+    private static final class Driver {
+        final ScheduledExecutorService scheduler;
+        final TimingWheel turnTimers;
+        final BlockingQueue<Message> prompts = new LinkedBlockingQueue<>();
+        final Player[] players = new Player[SEATS];
+        final long[] samples = new long[MAX_SAMPLES];
+        volatile GameManager match;
+        volatile boolean running = true;
+        int count;
+        int matches;
+
+        Driver(ScheduledExecutorService scheduler, TimingWheel turnTimers) {
+            this.scheduler = scheduler;
+            this.turnTimers = turnTimers;
+            for (int seat = 0; seat < SEATS; seat++) players[seat] = new Player("player" + seat);
+        }
+
+        void newMatch() {
+            try {
+                if (match != null) match.close();
+                prompts.clear();
+                GameManager gm = new GameManager("bench-" + matches++, SEATS, scheduler, turnTimers, null, null);
+                for (Player player : players) gm.join(player, new PromptConnection(player.getName(), prompts));
+                gm.claimStart(false);
+                match = gm;
+                gm.startGame();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void play(long end) throws InterruptedException {
+            try {
+                while (System.nanoTime() < end) {
+                    Message prompt = prompts.poll(100, TimeUnit.MILLISECONDS);
+                    if (prompt == null) continue;
+                    if (Message.GAME_OVER.equals(prompt.getType())) {
+                        newMatch();
+                        continue;
+                    }
+                    Player player = players[Integer.parseInt(prompt.getRecipient().substring("player".length()))];
+                    Message action = Message.YOUR_TURN.equals(prompt.getType())
+                            ? new Message(Message.ROLL, "", player.getName())
+                            : new Message(Message.MOVE_TOKEN, firstToken(prompt.getContent()), player.getName());
+                    long start = System.nanoTime();
+                    match.handleMessage(action, player);
+                    if (count < samples.length) samples[count++] = System.nanoTime() - start;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private static String firstToken(String chooseContent) {
+            int mask = Integer.parseInt(chooseContent.substring(chooseContent.indexOf('|') + 1));
+            return String.valueOf(Integer.numberOfTrailingZeros(mask));
+        }
+    }
+
+    /** A player's connection that keeps only the prompts the driver must answer. */
+    private static final class PromptConnection implements Connection {
+        private final String name;
+        private final BlockingQueue<Message> prompts;
+
+        PromptConnection(String name, BlockingQueue<Message> prompts) {
+            this.name = name;
+            this.prompts = prompts;
+        }
+
+        @Override
+        public void sendMessage(Message msg) {
+            String type = msg.getType();
+            if (Message.YOUR_TURN.equals(type) || Message.CHOOSE_TOKEN.equals(type)) {
+                prompts.add(new Message(type, msg.getContent(), "SERVER", name));
+            } else if (Message.GAME_OVER.equals(type) && name.equals("player0")) {
+                prompts.add(msg); // every seat is told; one is enough to start the next match
+            }
+        }
+
+        @Override
+        public int backlog() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
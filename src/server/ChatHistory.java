@@ -0,0 +1,92 @@
+package server;
+
+import model.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recent chat of one match: a fixed-size ring of messages for the public room and one
+ * for each private conversation, so memory per conversation stays bounded however
+ * long the match runs. Messages get increasing ids as they are recorded, and clients
+ * page backwards through a conversation by id. Used from the lock-free chat path;
+ * each ring has its own small lock.
+ */
+public class ChatHistory {
+    private static final String PUBLIC = "";
+
+    private final int capacity;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    public ChatHistory(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /** Stamps msg with the next id and records it; call before the message is sent. */
+    public void record(Message msg) {
+        boolean isPrivate = Message.PRIVATE_CHAT.equals(msg.getType());
+        if (isPrivate && (msg.getRecipient() == null || msg.getPlayerName() == null)) return;
+        String key = isPrivate ? conversation(msg.getPlayerName(), msg.getRecipient()) : PUBLIC;
+        Ring ring = rings.computeIfAbsent(key, k -> new Ring(capacity));
+        synchronized (ring) {
+            msg.setId(nextId.incrementAndGet()); // assigned under the ring lock so each ring stays in id order
+            ring.add(msg);
+        }
+    }
+
+    /**
+     * Returns up to limit messages older than beforeId (0 = the newest), oldest first,
+     * from the public room if other is empty or from requester's conversation with other.
+     * more[0] is set if older messages remain.
+     */
+    public List<Message> page(String requester, String other, long beforeId, int limit, boolean[] more) {
+        String key = other == null || other.isEmpty() ? PUBLIC : conversation(requester, other);
+        Ring ring = rings.get(key);
+        List<Message> page = new ArrayList<>();
+        more[0] = false;
+        if (ring == null || limit <= 0) return page;
+        synchronized (ring) {
+            int i = ring.size - 1;
+            while (i >= 0 && beforeId > 0 && ring.get(i).getId() >= beforeId) i--;
+            for (; i >= 0 && page.size() < limit; i--) page.add(ring.get(i));
+            more[0] = i >= 0;
+        }
+        Collections.reverse(page);
+        return page;
+    }
+
+    /** Key of a private conversation, the same whichever side sent the message. */
+    private static String conversation(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + '\u0000' + b : b + '\u0000' + a;
+    }
+
+    /** Oldest entries are overwritten once the ring is full. */
+    private static final class Ring {
+        final Message[] slots;
+        int start = 0;
+        int size = 0;
+
+        Ring(int capacity) {
+            slots = new Message[capacity];
+        }
+
+        void add(Message msg) {
+            if (size < slots.length) {
+                slots[(start + size++) % slots.length] = msg;
+            } else {
+                slots[start] = msg;
+                start = (start + 1) % slots.length;
+            }
+        }
+
+        /** The i-th oldest message held. */
+        Message get(int i) {
+            return slots[(start + i) % slots.length];
+        }
+    }
+}
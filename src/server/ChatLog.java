@@ -0,0 +1,553 @@
+package server;
+
+import model.ByteReader;
+import model.ByteWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable, searchable log of every chat message, kept apart from the match journal
+ * (which is truncated once matches end).
+ *
+ * Messages go to numbered segment files chat-N.log. A record is int body length, int
+ * CRC32C of the body, then the body. As with the journal, append() only enqueues and
+ * one writer thread does the I/O. The writer also keeps an inverted index of the
+ * current segment: each word of the text, plus "from:sender", "to:recipient" and
+ * "match:id", maps to the offsets of the records that contain it. When a segment
+ * fills, its index is written next to it as chat-N.idx with the segment's time range.
+ *
+ * search() reads only the indexes of segments that overlap the time range, intersects
+ * the posting lists of the query terms, and reads just the matching records. The
+ * newest segment has no final index yet; the writer checkpoints its index to
+ * chat-N.idx.part every CHECKPOINT_BYTES of log, so a search only scans the records
+ * written since the last checkpoint.
+ */
+public class ChatLog implements AutoCloseable {
+    private static final int HEADER = 8;
+    private static final String PREFIX = "chat-";
+    private static final String LOG = ".log";
+    private static final String IDX = ".idx";
+    private static final String PART = ".idx.part";
+    private static final int INDEX_MAGIC = 0x4C434958;
+    private static final int INDEX_VERSION = 1;
+    private static final long CHECKPOINT_BYTES = 1 << 20;
+    private static final int MAX_TERM = 40;
+    private static final long FORCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean parked = false;
+    private volatile boolean running = true;
+
+    // Writer thread only
+    private final CRC32C crc = new CRC32C();
+    private FileChannel out;
+    private long segmentNumber;
+    private long position;
+    private SegmentIndex index;
+    private long checkpointed; // log bytes covered by the newest segment's .idx.part
+    private boolean dirty = false;
+    private long lastForce = System.nanoTime();
+
+    private ChatLog(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE); // index postings hold int offsets
+        Files.createDirectories(dir);
+        resume();
+        writer = new Thread(this::writeLoop, "chatlog-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Opens (or creates) the chat log in dir and starts its writer thread. */
+    public static ChatLog open(Path dir, long segmentBytes) throws IOException {
+        return new ChatLog(dir, segmentBytes);
+    }
+
+    /** Queues a message; returns at once. Safe from any thread. */
+    public void append(Entry entry) {
+        queue.add(entry);
+        if (parked) LockSupport.unpark(writer);
+    }
+
+    /** Writes and syncs everything queued so far, then stops the writer. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Entry entry = queue.poll();
+            if (entry != null) {
+                try {
+                    write(entry);
+                } catch (IOException e) {
+                    System.err.println("[CHATLOG] Write failed, message lost: " + e.getMessage());
+                }
+                continue;
+            }
+            long now = System.nanoTime();
+            if (dirty && (!running || now - lastForce >= FORCE_INTERVAL_NANOS)) force();
+            if (!running) {
+                if (queue.isEmpty()) {
+                    closeSegment();
+                    return;
+                }
+                continue;
+            }
+            parked = true;
+            if (queue.isEmpty()) LockSupport.parkNanos(this, dirty ? FORCE_INTERVAL_NANOS : TimeUnit.SECONDS.toNanos(5));
+            parked = false;
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        byte[] body = entry.encode();
+        if (position > 0 && position + HEADER + body.length > segmentBytes) seal();
+        ByteBuffer record = ByteBuffer.allocate(HEADER + body.length);
+        crc.reset();
+        crc.update(body);
+        record.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        while (record.hasRemaining()) out.write(record);
+        index.add(position, entry);
+        position += HEADER + body.length;
+        dirty = true;
+        ServerMetrics.chatLogged.increment();
+    }
+
+    private void force() {
+        try {
+            out.force(false);
+        } catch (IOException e) {
+            System.err.println("[CHATLOG] Sync failed: " + e.getMessage());
+        }
+        dirty = false;
+        lastForce = System.nanoTime();
+        if (position - checkpointed >= CHECKPOINT_BYTES) checkpoint();
+    }
+
+    /** Saves the newest segment's index so far, for searches; the records are synced. */
+    private void checkpoint() {
+        try {
+            index.write(partPath(dir, segmentNumber), position);
+            checkpointed = position;
+        } catch (IOException e) {
+            System.err.println("[CHATLOG] Index checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    /** Finishes the current segment by writing its index, then starts the next one. */
+    private void seal() throws IOException {
+        force();
+        out.close();
+        index.write(indexPath(dir, segmentNumber), position);
+        deletePart(segmentNumber);
+        segmentNumber++;
+        openSegment(0);
+        index = new SegmentIndex();
+    }
+
+    /** Removes a sealed segment's checkpoint; a leftover one is harmless, as its .idx is read instead. */
+    private void deletePart(long number) {
+        try {
+            Files.deleteIfExists(partPath(dir, number));
+        } catch (IOException e) {
+            System.err.println("[CHATLOG] Could not remove index checkpoint: " + e.getMessage());
+        }
+    }
+
+    private void closeSegment() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println("[CHATLOG] Close failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reopens the newest segment after its last intact record, indexing it again, and
+     * writes any index a crash left unwritten for an older segment.
+     */
+    private void resume() throws IOException {
+        List<Path> segments = segments(dir);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            long n = number(segments.get(i));
+            if (!Files.exists(indexPath(dir, n))) {
+                SegmentIndex old = new SegmentIndex();
+                long end = scan(segments.get(i), 0, old::add);
+                old.write(indexPath(dir, n), end);
+            }
+            deletePart(n);
+        }
+        if (segments.isEmpty()) {
+            segmentNumber = 1;
+            index = new SegmentIndex();
+            openSegment(0);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        segmentNumber = number(last);
+        index = new SegmentIndex();
+        long end = scan(last, 0, index::add);
+        openSegment(end);
+    }
+
+    private void openSegment(long end) throws IOException {
+        out = FileChannel.open(logPath(dir, segmentNumber), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        out.truncate(end); // drops a record torn by a crash
+        out.position(end);
+        position = end;
+        checkpointed = end;
+    }
+
+    /**
+     * Finds up to limit messages that contain every word of the query, newest first.
+     * sender, recipient and matchId narrow the search when not null; from/to bound the
+     * time in epoch millis (inclusive, 0 = unbounded). With no words or names it returns
+     * every message in the time range; words that are all too short to be indexed match
+     * nothing.
+     */
+    public static List<Entry> search(Path dir, String words, String sender, String recipient, String matchId,
+                                     long from, long to, int limit) throws IOException {
+        Set<String> terms = terms(words == null ? "" : words);
+        List<Entry> results = new ArrayList<>();
+        if (terms.isEmpty() && words != null && !words.isBlank()) return results;
+        if (sender != null) terms.add("from:" + sender.toLowerCase(Locale.ROOT));
+        if (recipient != null) terms.add("to:" + recipient.toLowerCase(Locale.ROOT));
+        if (matchId != null) terms.add("match:" + matchId.toLowerCase(Locale.ROOT));
+        long upper = to > 0 ? to : Long.MAX_VALUE;
+
+        List<Path> segments = segments(dir);
+        for (int i = segments.size() - 1; i >= 0 && results.size() < limit; i--) {
+            Path log = segments.get(i);
+            Path idx = indexPath(dir, number(log));
+            SegmentIndex index = Files.exists(idx) ? SegmentIndex.read(idx, terms, from, upper)
+                    : newestIndex(log, terms, from, upper);
+            if (index.records == 0 || index.maxTime < from || index.minTime > upper) continue;
+
+            int[] hits = index.match(terms);
+            if (hits.length == 0) continue;
+            try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+                for (int h = hits.length - 1; h >= 0 && results.size() < limit; h--) {
+                    Entry e = readAt(in, hits[h]);
+                    if (e != null && e.time >= from && e.time <= upper) results.add(e);
+                }
+            }
+        }
+        return results;
+    }
+
+    private static Entry readAt(FileChannel in, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        if (in.read(header, offset) < HEADER) return null;
+        int length = header.getInt(0);
+        ByteBuffer body = ByteBuffer.allocate(length);
+        in.read(body, offset + HEADER);
+        return Entry.decode(body.array());
+    }
+
+    /**
+     * Indexes the segment still being written: its last checkpoint plus the records
+     * after it. Scans the whole segment if it has no checkpoint, or if it was sealed and
+     * the checkpoint removed meanwhile (rare enough not to retry the final index).
+     */
+    private static SegmentIndex newestIndex(Path log, Set<String> terms, long from, long to) throws IOException {
+        SegmentIndex index;
+        try {
+            index = SegmentIndex.read(partPath(log.getParent(), number(log)), terms, from, to);
+        } catch (NoSuchFileException e) {
+            index = new SegmentIndex();
+        }
+        scan(log, index.end, index::add);
+        return index;
+    }
+
+    private interface RecordVisitor {
+        void accept(long offset, Entry entry);
+    }
+
+    /** Visits every intact record from offset start on; returns the offset just past the last one. */
+    private static long scan(Path log, long start, RecordVisitor visitor) throws IOException {
+        byte[] data;
+        try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.max(0, in.size() - start));
+            while (tail.hasRemaining()) {
+                if (in.read(tail, start + tail.position()) < 0) break;
+            }
+            data = Arrays.copyOf(tail.array(), tail.position());
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        CRC32C crc = new CRC32C();
+        int pos = 0;
+        while (pos + HEADER <= data.length) {
+            int length = buf.getInt(pos);
+            if (length <= 0 || pos + HEADER + length > data.length) break;
+            crc.reset();
+            crc.update(data, pos + HEADER, length);
+            if ((int) crc.getValue() != buf.getInt(pos + 4)) break;
+            visitor.accept(start + pos, Entry.decode(Arrays.copyOfRange(data, pos + HEADER, pos + HEADER + length)));
+            pos += HEADER + length;
+        }
+        return start + pos;
+    }
+
+    /** Lower-cased words of at least two letters or digits, each once. */
+    static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            if (!word && start >= 0) {
+                if (i - start >= 2) terms.add(text.substring(start, Math.min(i, start + MAX_TERM)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    static List<Path> segments(Path dir) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return result;
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> {
+                String n = p.getFileName().toString();
+                return n.startsWith(PREFIX) && n.endsWith(LOG);
+            }).sorted().forEach(result::add);
+        }
+        return result;
+    }
+
+    private static long number(Path log) {
+        String n = log.getFileName().toString();
+        return Long.parseLong(n.substring(PREFIX.length(), n.length() - LOG.length()));
+    }
+
+    private static Path logPath(Path dir, long number) {
+        return dir.resolve(String.format("%s%019d%s", PREFIX, number, LOG));
+    }
+
+    private static Path indexPath(Path dir, long number) {
+        return dir.resolve(String.format("%s%019d%s", PREFIX, number, IDX));
+    }
+
+    private static Path partPath(Path dir, long number) {
+        return dir.resolve(String.format("%s%019d%s", PREFIX, number, PART));
+    }
+
+    /** One chat message as stored. recipient is null for public chat. */
+    public static final class Entry {
+        public final long time;
+        public final String matchId;
+        public final String sender;
+        public final String recipient;
+        public final String text;
+
+        public Entry(long time, String matchId, String sender, String recipient, String text) {
+            this.time = time;
+            this.matchId = matchId;
+            this.sender = sender;
+            this.recipient = recipient;
+            this.text = text;
+        }
+
+        byte[] encode() {
+            ByteWriter w = new ByteWriter(32 + text.length());
+            w.writeVarLong(time);
+            w.writeString(matchId);
+            w.writeString(sender);
+            w.writeByte(recipient != null ? 1 : 0);
+            if (recipient != null) w.writeString(recipient);
+            w.writeString(text);
+            return w.toByteArray();
+        }
+
+        static Entry decode(byte[] data) throws IOException {
+            ByteReader r = new ByteReader(data, 0, data.length);
+            long time = r.readVarLong();
+            String matchId = r.readString();
+            String sender = r.readString();
+            String recipient = r.readByte() != 0 ? r.readString() : null;
+            return new Entry(time, matchId, sender, recipient, r.readString());
+        }
+
+        /** The terms this message is found under. */
+        Set<String> terms() {
+            Set<String> terms = ChatLog.terms(text);
+            terms.add("from:" + sender.toLowerCase(Locale.ROOT));
+            if (recipient != null) terms.add("to:" + recipient.toLowerCase(Locale.ROOT));
+            terms.add("match:" + matchId.toLowerCase(Locale.ROOT));
+            return terms;
+        }
+    }
+
+    /** Term -> ascending record offsets for one segment, plus the segment's time range. */
+    private static final class SegmentIndex {
+        private final Map<String, Postings> postings = new HashMap<>();
+        private final Postings all = new Postings();
+        int records = 0;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        long end = 0; // log offset the index was written up to
+
+        void add(long offset, Entry entry) {
+            for (String term : entry.terms()) postings.computeIfAbsent(term, t -> new Postings()).add((int) offset);
+            all.add((int) offset);
+            records++;
+            minTime = Math.min(minTime, entry.time);
+            maxTime = Math.max(maxTime, entry.time);
+        }
+
+        /** Offsets of the records that have every term, ascending; every record if terms is empty. */
+        int[] match(Set<String> terms) {
+            if (terms.isEmpty()) return all.toArray();
+            int[] result = null;
+            for (String term : terms) {
+                Postings p = postings.get(term);
+                if (p == null) return new int[0];
+                result = result == null ? p.toArray() : intersect(result, p.toArray());
+                if (result.length == 0) break;
+            }
+            return result;
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] out = new int[Math.min(a.length, b.length)];
+            int i = 0, j = 0, n = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) i++;
+                else if (a[i] > b[j]) j++;
+                else {
+                    out[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        /**
+         * Time range, counts and the log offset covered first, then terms in sorted order,
+         * each with the byte length of its offsets and the offsets delta-encoded as varints,
+         * so a reader can skip the terms a query doesn't use.
+         */
+        void write(Path path, long end) throws IOException {
+            ByteWriter w = new ByteWriter(4096);
+            w.writeVarLong(INDEX_MAGIC);
+            w.writeByte(INDEX_VERSION);
+            w.writeVarLong(records);
+            w.writeVarLong(records > 0 ? minTime : 0);
+            w.writeVarLong(records > 0 ? maxTime : 0);
+            w.writeVarLong(end);
+            w.writeBytes(encode(all));
+            Map<String, Postings> sorted = new TreeMap<>(postings);
+            w.writeVarLong(sorted.size());
+            for (Map.Entry<String, Postings> e : sorted.entrySet()) {
+                w.writeString(e.getKey());
+                w.writeBytes(encode(e.getValue()));
+            }
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, w.toByteArray());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Loads the postings of just the given terms (all offsets if terms is empty). A
+         * segment entirely outside [from, to] comes back with only its time range.
+         */
+        static SegmentIndex read(Path path, Set<String> terms, long from, long to) throws IOException {
+            byte[] data = Files.readAllBytes(path);
+            ByteReader r = new ByteReader(data, 0, data.length);
+            int version = r.readVarLong() == INDEX_MAGIC ? r.readByte() : -1;
+            if (version != INDEX_VERSION) throw new IOException("Not a chat index: " + path);
+            SegmentIndex index = new SegmentIndex();
+            index.records = (int) r.readVarLong();
+            long min = r.readVarLong();
+            long max = r.readVarLong();
+            index.end = r.readVarLong();
+            if (index.records > 0) {
+                index.minTime = min;
+                index.maxTime = max;
+            }
+            if (index.records == 0 || max < from || min > to) return index;
+            byte[] all = r.readBytes();
+            if (terms.isEmpty()) decode(all, index.all);
+            int count = (int) r.readVarLong();
+            int wanted = terms.size();
+            for (int i = 0; i < count && wanted > 0; i++) {
+                String term = r.readString();
+                byte[] offsets = r.readBytes();
+                if (!terms.contains(term)) continue;
+                Postings p = new Postings();
+                decode(offsets, p);
+                index.postings.put(term, p);
+                wanted--;
+            }
+            return index;
+        }
+
+        private static byte[] encode(Postings p) {
+            ByteWriter w = new ByteWriter(p.size + 4);
+            int last = 0;
+            for (int i = 0; i < p.size; i++) {
+                w.writeVarLong(p.offsets[i] - last);
+                last = p.offsets[i];
+            }
+            return w.toByteArray();
+        }
+
+        private static void decode(byte[] data, Postings p) throws IOException {
+            ByteReader r = new ByteReader(data, 0, data.length);
+            int last = 0;
+            while (r.remaining() > 0) {
+                last += (int) r.readVarLong();
+                p.add(last);
+            }
+        }
+    }
+
+    /** A growable int array of record offsets, in the order they were added. */
+    private static final class Postings {
+        int[] offsets = new int[4];
+        int size = 0;
+
+        void add(int offset) {
+            if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+            offsets[size++] = offset;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(offsets, size);
+        }
+    }
+}
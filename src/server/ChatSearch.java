@@ -0,0 +1,76 @@
+package server;
+
+import util.Constants;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Moderation search over the chat log. Safe to run while the server is writing it.
+ *
+ * Usage: java server.ChatSearch [words...] [from:NAME] [to:NAME] [match:ID]
+ *                               [after:TIME] [before:TIME] [limit:N] [dir:PATH]
+ *   words    every word must appear in the message (case-insensitive, whole words of
+ *            at least two letters or digits)
+ *   from/to  sender / private-chat recipient
+ *   match    match id
+ *   after    only messages at or after TIME: 2026-10-18 or 2026-10-18T14:30 (local time)
+ *   before   only messages before TIME
+ *   limit    most results to print, newest first (default 100)
+ *   dir      chat log directory (default -Dludo.chatLog, "chatlog")
+ */
+public class ChatSearch {
+    public static void main(String[] args) throws IOException {
+        StringBuilder words = new StringBuilder();
+        String from = null, to = null, match = null;
+        long after = 0, before = 0;
+        int limit = 100;
+        Path dir = Paths.get(Constants.CHAT_LOG_DIR);
+        try {
+            for (String arg : args) {
+                int colon = arg.indexOf(':');
+                String key = colon > 0 ? arg.substring(0, colon) : "";
+                String value = colon > 0 ? arg.substring(colon + 1) : arg;
+                switch (key) {
+                    case "from": from = value; break;
+                    case "to": to = value; break;
+                    case "match": match = value; break;
+                    case "after": after = parseTime(value); break;
+                    case "before": before = parseTime(value) - 1; break;
+                    case "limit": limit = Integer.parseInt(value); break;
+                    case "dir": dir = Paths.get(value); break;
+                    default: words.append(arg).append(' ');
+                }
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            System.err.println("Bad argument: " + e.getMessage());
+            return;
+        }
+
+        if (words.length() > 0 && ChatLog.terms(words.toString()).isEmpty()) {
+            System.err.println("Search words need at least two letters or digits.");
+            return;
+        }
+        long start = System.nanoTime();
+        List<ChatLog.Entry> results = ChatLog.search(dir, words.toString(), from, to, match, after, before, limit);
+        long micros = (System.nanoTime() - start) / 1000;
+        for (ChatLog.Entry e : results) {
+            System.out.println(Instant.ofEpochMilli(e.time).atZone(ZoneId.systemDefault()).toLocalDateTime()
+                    + " [" + e.matchId + "] " + e.sender + (e.recipient != null ? " -> " + e.recipient : "")
+                    + ": " + e.text);
+        }
+        System.out.printf("[CHATLOG] %d results in %.1f ms%n", results.size(), micros / 1000.0);
+    }
+
+    private static long parseTime(String value) {
+        LocalDateTime time = value.contains("T") ? LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -2,49 +2,77 @@ package server;
 
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import model.*;
+import util.Constants;
 
 /**
  * Handles communication between the Ludo server and a single connected client.
  * Each client runs on its own thread. This class manages:
- * - Receiving player JOIN messages
+ * - Receiving player JOIN (or RESUME, or spectator SPECTATE) messages
  * - Listening for player actions (like dice rolls)
- * - Sending updates from the server
+ * - Sending updates from the server through a bounded outbound queue
  * - Handling disconnections safely
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, Connection {
 
     private Socket socket;
-    private GameManager gameManager;
-    private ObjectInputStream in;
-    private ObjectOutputStream out;
+    private MatchRegistry registry;
+    private Executor workers;
+    private volatile GameManager gameManager; // also read by the writer thread
+    private MessageChannel channel;
     private Player player;
-    private boolean connected = true;
-    private boolean isDisconnecting = false;
+    private boolean spectating = false; // read-only viewer; its messages are ignored
+    private final RateLimiter limiter = new RateLimiter(); // reader thread only
+    private volatile boolean connected = true;
+    private volatile boolean isDisconnecting = false;
+    // Senders only enqueue; a separate writer task owns the socket's output side
+    private final OutboundQueue outbound = OutboundQueue.fromConfig();
+    private final CountDownLatch writerDone = new CountDownLatch(1);
 
-    public ClientHandler(Socket socket, GameManager gameManager) {
+    public ClientHandler(Socket socket, MatchRegistry registry, Executor workers) {
         this.socket = socket;
-        this.gameManager = gameManager;
+        this.registry = registry;
+        this.workers = workers;
     }
 
     @Override
     public void run() {
         try {
-            out = new ObjectOutputStream(socket.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(socket.getInputStream());
+            // Protocol (object streams or framed) is detected from the client's first bytes
+            channel = MessageChannel.accept(socket.getInputStream(), new CountingOutput(socket.getOutputStream()));
+            workers.execute(this::writeLoop);
 
-            // Player joins
-            Message joinMsg = (Message) in.readObject();
+            // Player joins; the JOIN content names the match (blank for quick match). SPECTATE watches one instead.
+            Message joinMsg = channel.receive();
             player = new Player(joinMsg.getPlayerName());
-            gameManager.addPlayer(player, this);
+            spectating = Message.SPECTATE.equals(joinMsg.getType());
+            if (spectating) {
+                gameManager = registry.watch(joinMsg.getContent(), this);
+            } else if (Message.RESUME.equals(joinMsg.getType())) {
+                gameManager = registry.resume(joinMsg.getContent(), player, this);
+            } else {
+                gameManager = registry.join(joinMsg.getContent(), player, this);
+            }
+            if (gameManager == null) {
+                // Let the writer flush the rejection notice before the socket is closed
+                outbound.finish();
+                writerDone.await(1, TimeUnit.SECONDS);
+                return;
+            }
 
-            System.out.println("[SERVER] Player joined: " + player.getName());
+            System.out.println("[SERVER] " + (spectating ? "Spectator" : "Player") + " joined: " + player.getName());
 
             // Continuous listening
             while (connected) {
-                Message msg = (Message) in.readObject();
-                gameManager.handleMessage(msg, player);
+                Message msg = channel.receive();
+                if (spectating) continue;
+                boolean myTurn = gameManager.isTurnOf(player.getName());
+                if (!admit(limiter.check(msg, myTurn, System.nanoTime()))) continue;
+                // Out-of-turn actions were charged above; the turn holder's are charged only if refused
+                if (!gameManager.handleMessage(msg, player) && myTurn) admit(limiter.refused(System.nanoTime()));
             }
 
         } catch (EOFException | SocketException e) {
@@ -58,30 +86,118 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    /** Sends a message from the server to this client. */
-    public synchronized void sendMessage(Message msg) {
-        if (out == null || isDisconnecting) return;
+    /** Applies a rate-limit verdict; false if the message is dropped. A flooding client is disconnected. */
+    private boolean admit(RateLimiter.Verdict verdict) {
+        switch (verdict) {
+            case ALLOW:
+                return true;
+            case NOTIFY:
+                sendMessage(RateLimiter.notice());
+                return false;
+            case DISCONNECT:
+                System.out.println("[SERVER] Disconnecting flooding client " + player.getName());
+                disconnect();
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Drains the outbound queue to the socket until the connection closes. One game
+     * action queues several messages (move, board update, notices, the next prompt), so
+     * the writer takes everything queued, waiting up to OUTBOUND_LINGER_US for the rest
+     * of the burst, and flushes it as one socket write.
+     */
+    private void writeLoop() {
+        long linger = TimeUnit.MICROSECONDS.toNanos(Constants.OUTBOUND_LINGER_US);
         try {
-            out.writeObject(msg);
-            out.flush();
+            while (!outbound.isClosed() || outbound.size() > 0) {
+                Message msg = outbound.poll(1, TimeUnit.SECONDS);
+                if (msg == null) continue;
+                long deadline = System.nanoTime() + linger;
+                int batch = 0;
+                while (msg != null) {
+                    channel.write(msg);
+                    if (++batch >= Constants.OUTBOUND_MAX_BATCH) break;
+                    msg = outbound.poll();
+                    long left = deadline - System.nanoTime();
+                    if (msg == null && left > 0) msg = outbound.poll(left, TimeUnit.NANOSECONDS);
+                }
+                channel.flush();
+                ServerMetrics.framesWritten.add(batch);
+                if (outbound.takeKeyframeNeeded() && gameManager != null) gameManager.sendKeyframeTo(this);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeSocket(); // the reader notices and runs disconnect()
         } catch (IOException e) {
-            disconnect(); // safe now, won’t recurse
+            closeSocket(); // the reader notices and runs disconnect()
+        } finally {
+            writerDone.countDown();
+        }
+    }
+
+    /** Queues a message for this client; never blocks on the socket. */
+    @Override
+    public void sendMessage(Message msg) {
+        if (isDisconnecting) return;
+        if (!outbound.offer(msg)) {
+            System.out.println("[SERVER] Evicting slow client " +
+                    (player != null ? player.getName() : "unknown"));
+            ServerMetrics.slowConsumerEvictions.increment();
+            outbound.close();
+            closeSocket(); // the reader notices and runs disconnect()
         }
     }
 
+    @Override
+    public int backlog() {
+        return outbound.size();
+    }
+
+    @Override
+    public void close() {
+        disconnect();
+    }
+
+    /** Counts the writes that reach the socket; the channel's buffering decides how many there are. */
+    private static final class CountingOutput extends FilterOutputStream {
+        CountingOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ServerMetrics.recordSocketWrite(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            ServerMetrics.recordSocketWrite(len);
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {}
+    }
+
     /** Safely closes this client's connection and notifies others. */
     private void disconnect() {
         if (isDisconnecting) return;
         isDisconnecting = true;
 
         connected = false;
-        try {
-            if (player != null) {
-                gameManager.removeClient(player.getName());
-                gameManager.broadcast(
-                        new Message("INFO", player.getName() + " has left the game.", "SERVER"));
-            }
-            socket.close();
-        } catch (IOException ignored) {}
+        outbound.close();
+        if (spectating && gameManager != null) {
+            gameManager.unwatch(this);
+        } else if (player != null && gameManager != null) {
+            registry.leave(gameManager, player.getName(), this);
+        }
+        closeSocket();
     }
 }
@@ -0,0 +1,87 @@
+package server;
+
+import model.Message;
+import model.MessageCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * Measures the wire codecs on a typical mix of game and chat messages: bytes per
+ * message and encode+decode time for the binary codec and per-frame serialization, and
+ * the steady-state bytes per message of the legacy long-lived object stream (which sends
+ * class descriptors once, then back-references).
+ *
+ * Usage: java server.CodecBench [iterations] [rounds]
+ *   iterations  messages encoded and decoded per timed round (default 1000000)
+ *   rounds      timed rounds; the first ones warm up the JIT, the last is reported (default 5)
+ */
+public class CodecBench {
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Message[] mix = sampleMessages();
+
+        System.out.println("[BENCH] " + mix.length + " message types, " + iterations + " messages per round");
+        System.out.printf("[BENCH] object stream: %.1f B/message steady state%n", objectStreamBytes(mix));
+        for (MessageCodec codec : new MessageCodec[]{MessageCodec.SERIALIZED, MessageCodec.BINARY}) {
+            String name = codec == MessageCodec.BINARY ? "binary" : "serialized";
+            long bytes = 0;
+            StringBuilder sizes = new StringBuilder();
+            for (Message msg : mix) {
+                int size = codec.encode(msg).length;
+                bytes += size;
+                sizes.append(' ').append(msg.getType()).append('=').append(size);
+            }
+            System.out.printf("[BENCH] %-10s %.1f B/message:%s%n", name, (double) bytes / mix.length, sizes);
+
+            long nanos = 0;
+            for (int round = 0; round < rounds; round++) nanos = encodeDecode(codec, mix, iterations);
+            System.out.printf("[BENCH] %-10s encode+decode %.2f us/message%n", name, nanos / 1000.0 / iterations);
+        }
+    }
+
+    /** One of each message the server sends most, with realistic content. */
+    private static Message[] sampleMessages() {
+        Message users = new Message(Message.USER_LIST, "", "SERVER");
+        users.setUserList(new String[]{"alice", "bob", "carol", "BOT-1"});
+        return new Message[]{
+                new Message(Message.JOIN, "", "alice"),
+                new Message(Message.STATE, "42|alice=0,-1,-1,12;bob=-1,-1,-1,-1;carol=30,-1,-1,-1;BOT-1=5,9,-1,-1;", "SERVER"),
+                new Message(Message.STATE_DELTA, "43|0.3=17;", "SERVER"),
+                new Message(Message.MOVE, "alice rolled 5 and moved token 4", "SERVER"),
+                new Message(Message.ROLL, "", "alice"),
+                new Message(Message.PRIVATE_CHAT, "nice capture, good luck!", "alice", "bob"),
+                users,
+        };
+    }
+
+    private static long encodeDecode(MessageCodec codec, Message[] mix, int iterations) throws IOException {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            byte[] payload = codec.encode(mix[i % mix.length]);
+            checksum += codec.decode(payload, 0, payload.length).getType().length();
+        }
+        long nanos = System.nanoTime() - start;
+        if (checksum == 0) System.out.println(); // keeps the loop from being optimised away
+        return nanos;
+    }
+
+    /** Bytes per message on one ObjectOutputStream once every class descriptor has been sent. */
+    private static double objectStreamBytes(Message[] mix) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (Message msg : mix) out.writeObject(msg);
+        out.flush();
+        int warm = bytes.size();
+        for (Message msg : mix) {
+            Message copy = new Message(msg.getType(), msg.getContent(), msg.getPlayerName(), msg.getRecipient());
+            copy.setUserList(msg.getUserList() == null ? null : msg.getUserList().clone());
+            out.writeObject(copy); // a fresh object, as a real session sends, not a back-reference
+        }
+        out.flush();
+        return (double) (bytes.size() - warm) / mix.length;
+    }
+}
@@ -0,0 +1,18 @@
+package server;
+
+import model.Message;
+
+/**
+ * A connected client as seen by the GameManager, independent of the transport
+ * (blocking ClientHandler thread or non-blocking NioConnection).
+ */
+public interface Connection {
+    /** Queues or writes a message to this client. Never throws; failures close the connection. */
+    void sendMessage(Message msg);
+
+    /** Messages queued for this client but not yet written. */
+    int backlog();
+
+    /** Closes the connection and removes the player from the game. */
+    void close();
+}
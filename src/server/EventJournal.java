@@ -0,0 +1,360 @@
+package server;
+
+import model.ByteReader;
+import model.ByteWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of match events in fixed-size, memory-mapped segment files.
+ *
+ * Segments are named after the sequence number of their first record. A record is
+ * int body length, int CRC32C of (seq, body), long seq, then the JournalEvent body; a
+ * zero length marks the end of the written part of a segment. On open the newest
+ * segment is scanned and appending resumes after its last intact record, so a record
+ * torn by a crash is discarded.
+ *
+ * append() never touches the disk: match threads enqueue an encoded event and go on.
+ * One writer thread drains whatever is queued into the mapped segment and then syncs
+ * according to the policy:
+ *   batch     force() after each drained batch; one sync covers every event queued
+ *             since the last (group commit)
+ *   interval  force() at most every fsyncIntervalMs
+ *   none      leave write-back to the OS; survives a process crash, not a power cut
+ *
+ * The writer also remembers where each live match's latest SNAPSHOT is. When it moves
+ * to a new segment it deletes the segments that end before the oldest of those, and
+ * saves the positions to a small snapshot index (again on close). Recovery starts
+ * reading at the oldest indexed snapshot and, before the index's position, keeps only
+ * each match's events from its indexed snapshot on.
+ */
+public class EventJournal implements AutoCloseable {
+    public enum FsyncPolicy { BATCH, INTERVAL, NONE }
+
+    private static final int HEADER = 16;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final String SNAPSHOT_INDEX = "snapshots.idx";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalNanos;
+    private final ConcurrentLinkedQueue<JournalEvent> queue = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean parked = false;
+    private volatile boolean running = true;
+
+    // Writer thread only
+    private final CRC32C crc = new CRC32C();
+    private MappedByteBuffer segment;
+    private long nextSeq;
+    private boolean dirty = false;
+    private long lastForce = System.nanoTime();
+    private final Map<String, Long> latestSnapshots = new HashMap<>(); // live match -> seq of its latest SNAPSHOT
+
+    private EventJournal(Path dir, int segmentBytes, FsyncPolicy policy, long fsyncIntervalMs) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.policy = policy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        Files.createDirectories(dir);
+        resume();
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Opens (or creates) the journal in dir and starts its writer thread. */
+    public static EventJournal open(Path dir, int segmentBytes, FsyncPolicy policy, long fsyncIntervalMs) throws IOException {
+        return new EventJournal(dir, segmentBytes, policy, fsyncIntervalMs);
+    }
+
+    /** Queues an event; returns at once. Safe from any thread. */
+    public void append(JournalEvent event) {
+        event.encoded = event.encode();
+        queue.add(event);
+        if (parked) LockSupport.unpark(writer);
+    }
+
+    /** Writes and syncs everything queued so far, then stops the writer. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            JournalEvent event = queue.poll();
+            if (event != null) {
+                try {
+                    write(event);
+                } catch (IOException e) {
+                    System.err.println("[JOURNAL] Write failed, event lost: " + e.getMessage());
+                }
+                continue;
+            }
+            // Queue drained: this is the end of a batch
+            long now = System.nanoTime();
+            if (dirty && (policy == FsyncPolicy.BATCH || !running
+                    || policy == FsyncPolicy.INTERVAL && now - lastForce >= fsyncIntervalNanos)) {
+                force();
+            }
+            if (!running) {
+                if (queue.isEmpty()) {
+                    writeSnapshotIndex();
+                    return;
+                }
+                continue;
+            }
+            parked = true;
+            if (queue.isEmpty()) {
+                long wait = dirty && policy == FsyncPolicy.INTERVAL
+                        ? Math.max(0, lastForce + fsyncIntervalNanos - now) : TimeUnit.SECONDS.toNanos(1);
+                LockSupport.parkNanos(this, wait);
+            }
+            parked = false;
+        }
+    }
+
+    private void write(JournalEvent event) throws IOException {
+        byte[] body = event.encoded;
+        int size = HEADER + body.length;
+        if (size + 4 > segmentBytes) {
+            throw new IOException("event of " + body.length + " bytes exceeds the segment size");
+        }
+        if (segment.remaining() < size + 4) { // keep room for the zero end marker
+            force();
+            segment = map(segmentPath(nextSeq), 0);
+            truncate();
+        }
+        int start = segment.position();
+        segment.putInt(body.length).putInt(0).putLong(nextSeq).put(body);
+        crc.reset();
+        crc.update(segment.duplicate().position(start + 8).limit(start + size));
+        segment.putInt(start + 4, (int) crc.getValue());
+        if (event.type == JournalEvent.SNAPSHOT) {
+            latestSnapshots.put(event.matchId, nextSeq);
+        } else if (event.type == JournalEvent.END || event.type == JournalEvent.GAME_OVER) {
+            latestSnapshots.remove(event.matchId); // nothing left to recover
+        }
+        nextSeq++;
+        dirty = true;
+        ServerMetrics.journalEvents.increment();
+    }
+
+    private void force() {
+        if (dirty && policy != FsyncPolicy.NONE) {
+            segment.force();
+            ServerMetrics.journalSyncs.increment();
+        }
+        dirty = false;
+        lastForce = System.nanoTime();
+    }
+
+    /** Deletes whole segments that end before the oldest snapshot any live match still needs. */
+    private void truncate() {
+        long keepFrom = nextSeq;
+        for (long seq : latestSnapshots.values()) keepFrom = Math.min(keepFrom, seq);
+        try {
+            List<Path> segments = segments(dir);
+            int deleted = 0;
+            for (int i = 0; i + 1 < segments.size() && firstSeq(segments.get(i + 1)) <= keepFrom; i++) {
+                Files.deleteIfExists(segments.get(i));
+                deleted++;
+            }
+            if (deleted > 0) {
+                System.out.println("[JOURNAL] Deleted " + deleted + " old segment(s), keeping events from #" + keepFrom);
+            }
+        } catch (IOException e) {
+            System.err.println("[JOURNAL] Truncation failed: " + e.getMessage());
+        }
+        writeSnapshotIndex();
+    }
+
+    /**
+     * Saves each live match's latest snapshot seq, as of nextSeq. Written to a temporary
+     * file and renamed, so a crash leaves the previous index, which is older but still
+     * correct: its snapshots are no later than the real ones.
+     */
+    private void writeSnapshotIndex() {
+        ByteWriter w = new ByteWriter(16 + latestSnapshots.size() * 24);
+        w.writeVarLong(nextSeq);
+        w.writeVarLong(latestSnapshots.size());
+        for (Map.Entry<String, Long> entry : latestSnapshots.entrySet()) {
+            w.writeString(entry.getKey());
+            w.writeVarLong(entry.getValue());
+        }
+        Path index = dir.resolve(SNAPSHOT_INDEX);
+        Path tmp = dir.resolve(SNAPSHOT_INDEX + ".tmp");
+        try {
+            Files.write(tmp, w.toByteArray());
+            Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[JOURNAL] Snapshot index not saved: " + e.getMessage());
+        }
+    }
+
+    /** Reads the snapshot index of the journal in dir; null if there is none or it can't be read. */
+    public static SnapshotIndex readSnapshotIndex(Path dir) {
+        try {
+            byte[] data = Files.readAllBytes(dir.resolve(SNAPSHOT_INDEX));
+            ByteReader r = new ByteReader(data, 0, data.length);
+            long upTo = r.readVarLong();
+            int count = (int) r.readVarLong();
+            Map<String, Long> latest = new HashMap<>();
+            for (int i = 0; i < count; i++) latest.put(r.readString(), r.readVarLong());
+            return new SnapshotIndex(upTo, latest);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[JOURNAL] Ignoring unreadable snapshot index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Where each live match's latest snapshot was when every event before upTo had been written. */
+    public static final class SnapshotIndex {
+        public final long upTo;
+        private final Map<String, Long> latest;
+
+        SnapshotIndex(long upTo, Map<String, Long> latest) {
+            this.upTo = upTo;
+            this.latest = latest;
+        }
+
+        /** The first seq recovery has to read. */
+        public long firstNeeded() {
+            long first = upTo;
+            for (long seq : latest.values()) first = Math.min(first, seq);
+            return first;
+        }
+
+        /**
+         * False for an event recovery can skip: one before upTo that is older than its
+         * match's indexed snapshot, or that belongs to a match with no indexed snapshot
+         * (finished, or never snapshotted, by then).
+         */
+        public boolean needed(String matchId, long seq) {
+            if (seq >= upTo) return true;
+            Long snapshot = latest.get(matchId);
+            return snapshot != null && seq >= snapshot;
+        }
+    }
+
+    /** Positions the writer after the last intact record of the newest segment. */
+    private void resume() throws IOException {
+        List<Path> segments = segments(dir);
+        if (segments.isEmpty()) {
+            Files.deleteIfExists(dir.resolve(SNAPSHOT_INDEX)); // it would point into a journal that is gone
+            nextSeq = 1;
+            segment = map(segmentPath(nextSeq), 0);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        long[] end = new long[2];
+        long[] lastSeq = {firstSeq(last) - 1};
+        scan(last, 0, e -> lastSeq[0] = e.seq, end);
+        nextSeq = lastSeq[0] + 1;
+        segment = map(last, (int) end[1]);
+        // Clear what a torn record left behind, so it can't be mistaken for data later
+        ByteBuffer tail = segment.duplicate();
+        if (tail.remaining() >= 4 && tail.getInt(tail.position()) != 0) {
+            while (tail.hasRemaining()) tail.put((byte) 0);
+        }
+    }
+
+    private MappedByteBuffer map(Path path, int position) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            buf.position(position);
+            return buf;
+        }
+    }
+
+    private Path segmentPath(long firstSeq) {
+        return dir.resolve(String.format("%s%019d%s", PREFIX, firstSeq, SUFFIX));
+    }
+
+    /** Reads every intact event with seq >= fromSeq, oldest first. Returns the number read. */
+    public static long replay(Path dir, long fromSeq, Consumer<JournalEvent> consumer) throws IOException {
+        List<Path> segments = segments(dir);
+        long count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            // Skip whole segments that end before fromSeq
+            if (i + 1 < segments.size() && firstSeq(segments.get(i + 1)) <= fromSeq) continue;
+            long[] counter = new long[2];
+            scan(segments.get(i), fromSeq, e -> {
+                consumer.accept(e);
+                counter[0]++;
+            }, counter);
+            count += counter[0];
+        }
+        return count;
+    }
+
+    /**
+     * Reads one segment until its end marker or first damaged record. end[1] is set
+     * to the byte offset just past the last intact record.
+     */
+    private static void scan(Path path, long fromSeq, Consumer<JournalEvent> consumer, long[] end) throws IOException {
+        byte[] data = Files.readAllBytes(path);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        CRC32C crc = new CRC32C();
+        int pos = 0;
+        while (pos + HEADER <= data.length) {
+            int length = buf.getInt(pos);
+            if (length <= 0 || pos + HEADER + length > data.length) break;
+            crc.reset();
+            crc.update(data, pos + 8, 8 + length);
+            if ((int) crc.getValue() != buf.getInt(pos + 4)) break;
+            long seq = buf.getLong(pos + 8);
+            if (seq >= fromSeq) consumer.accept(JournalEvent.decode(data, pos + HEADER, length, seq));
+            pos += HEADER + length;
+        }
+        end[1] = pos;
+    }
+
+    /** Segment files, oldest first. */
+    static List<Path> segments(Path dir) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return result;
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> {
+                String n = p.getFileName().toString();
+                return n.startsWith(PREFIX) && n.endsWith(SUFFIX);
+            }).sorted().forEach(result::add);
+        }
+        return result;
+    }
+
+    static long firstSeq(Path segment) {
+        String n = segment.getFileName().toString();
+        return Long.parseLong(n.substring(PREFIX.length(), n.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,79 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single selector thread that services many NioConnections.
+ * Other threads hand work to the loop with execute(); it runs on the next wakeup.
+ */
+public class EventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public EventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /** Registers an accepted channel with this loop for reading. */
+    public void register(SocketChannel channel, NioConnection connection) {
+        execute(() -> {
+            try {
+                connection.attach(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (IOException e) {
+                connection.close();
+            }
+        });
+    }
+
+    /** Runs a task on the loop thread. */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (!key.isValid()) continue;
+                    if (key.isReadable()) connection.onReadable();
+                    if (key.isValid() && key.isWritable()) connection.onWritable();
+                }
+            } catch (IOException e) {
+                System.err.println("[NIO] Event loop error: " + e.getMessage());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -1,130 +1,812 @@
 package server;
 
 import model.*;
+import util.Constants;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * The GameManager class manages all server-side game logic:
+ * The GameManager class manages all server-side game logic for one match:
  * - Tracks all players and bots
  * - Manages game state and turns
  * - Broadcasts updates to clients
  * - Handles dice rolls and player moves
  */
 public class GameManager {
+    public enum JoinResult { OK, FULL, NAME_TAKEN }
+
+    private final String matchId;
+    private final int humanSeats;
+    // Each match rolls from its own generator (used under the lock), so the seed reproduces its dice exactly
+    private final long seed;
+    private final SplittableRandom dice;
+    private long rolls = 0; // dice drawn so far; a snapshot stores it so recovery can fast-forward the generator
     private GameState state = new GameState();
-    private Map<String, ClientHandler> clients = new HashMap<>();
-    private List<BotPlayer> bots = new ArrayList<>();
+    // Mutated under lock, but read lock-free by the chat path
+    private final Map<String, Connection> clients = new ConcurrentHashMap<>();
+    private final Map<String, BotPlayer> bots = new HashMap<>();
+    // Hash of each human's session token (the token itself is never kept), and the humans
+    // whose connection dropped while their seat is held
+    private final Map<String, String> sessionHashes = new HashMap<>();
+    // Recovered players whose last board seq is from before the restart; they resume from a keyframe
+    private final Set<String> resyncFromKeyframe = new HashSet<>();
+    // Each suspension gets its own number, so a stale grace timer can't end a later one
+    private final Map<String, Integer> suspended = new HashMap<>();
+    private int suspensions = 0;
+    private final ScheduledExecutorService botScheduler;
+    private final TimingWheel turnTimers;
+    private final EventJournal journal; // null when journaling is off
+    private final ChatLog chatLog;      // null when the chat log is off
+    private final SpectatorFeed spectators;
+    private final ChatHistory chatHistory = new ChatHistory(Constants.CHAT_HISTORY_SIZE);
+    private final TypingTracker typing = new TypingTracker();
+    private TimingWheel.Timeout turnWarning;
+    private TimingWheel.Timeout turnDeadline;
+    private int turnNumber = 0; // bumped every turn, so a timer that fires late for an old turn is ignored
+    private boolean started = false;
+    private boolean startClaimed = false;
+    private int stateSeq = 0;
+    private int deltasSinceKeyframe = 0;
+    // The last keyframes/deltas by seq, replayed to a resuming player instead of a full keyframe
+    private final Message[] recentStates = new Message[Constants.SESSION_RESYNC_HISTORY];
+    private int pendingDice = 0; // dice waiting for the current human to pick a token
+    private int eventsSinceSnapshot = 0;
+    private boolean snapshotted = false;
+    private volatile boolean closed = false;
+    private volatile String turnHolder; // whose turn it is, for readers outside the lock; null if nobody may act
+    // Explicit lock rather than synchronized, so virtual threads blocked in sendMessage don't pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
 
-    /** Adds a player to the game and notifies everyone. */
-    public synchronized void addPlayer(Player player, ClientHandler handler) throws IOException {
-        state.addPlayer(player);
-        clients.put(player.getName(), handler);
-        broadcast(new Message("INFO", player.getName() + " joined!", "SERVER"));
-        
-        // Send updated user list to all clients for chat
-        sendUserListToAll();
+    public GameManager(String matchId, int humanSeats, ScheduledExecutorService botScheduler, TimingWheel turnTimers,
+                       EventJournal journal, ChatLog chatLog) {
+        this(matchId, humanSeats, botScheduler, turnTimers, journal, chatLog,
+                Constants.MATCH_SEED != null ? Constants.MATCH_SEED : ThreadLocalRandom.current().nextLong());
     }
 
-    /** Removes a player/client when disconnected. */
-    public synchronized void removeClient(String playerName) {
-        clients.remove(playerName);
-        state.getPlayers().remove(playerName);
-        System.out.println("[SERVER] Removed player: " + playerName);
-        
-        // Update user list for remaining clients
+    private GameManager(String matchId, int humanSeats, ScheduledExecutorService botScheduler, TimingWheel turnTimers,
+                        EventJournal journal, ChatLog chatLog, long seed) {
+        this.matchId = matchId;
+        this.humanSeats = humanSeats;
+        this.botScheduler = botScheduler;
+        this.turnTimers = turnTimers;
+        this.journal = journal;
+        this.chatLog = chatLog;
+        this.spectators = new SpectatorFeed(matchId);
+        this.seed = seed;
+        this.dice = new SplittableRandom(seed);
+    }
+
+    /**
+     * Rebuilds a started match from a recovered snapshot. The dice generator is advanced
+     * past the rolls already used, so the match continues with the same dice it would
+     * have rolled. Call resumeAfterRecovery() on the match's scheduler to continue play.
+     */
+    static GameManager restore(MatchSnapshot snapshot, ScheduledExecutorService botScheduler, TimingWheel turnTimers,
+                               EventJournal journal, ChatLog chatLog) {
+        GameManager gm = new GameManager(snapshot.matchId, snapshot.humanSeats, botScheduler, turnTimers, journal,
+                chatLog, snapshot.seed);
+        for (long i = 0; i < snapshot.rolls; i++) gm.dice.nextInt(6);
+        gm.rolls = snapshot.rolls;
+        gm.state = snapshot.state;
+        gm.pendingDice = snapshot.pendingDice;
+        for (String bot : snapshot.bots) gm.bots.put(bot, new BotPlayer(bot, gm));
+        gm.sessionHashes.putAll(snapshot.sessions);
+        gm.resyncFromKeyframe.addAll(snapshot.sessions.keySet());
+        gm.started = true;
+        gm.startClaimed = true;
+        return gm;
+    }
+
+    /** Continues a restored match: checkpoints it and hands the turn back to its holder. */
+    void resumeAfterRecovery() {
+        lock.lock();
+        try {
+            String current = state.getCurrentTurn();
+            if (closed || state.isGameOver() || current == null) return;
+            turnHolder = current;
+            writeSnapshot();
+            BotPlayer bot = bots.get(current);
+            if (bot != null && pendingDice != 0) {
+                int seat = state.getCurrentSeat();
+                bot.chooseToken(state.copy(), seat, pendingDice, state.legalMoves(seat, pendingDice));
+            } else if (bot != null) {
+                botScheduler.schedule(bot::takeTurn, Constants.BOT_THINK_MS, TimeUnit.MILLISECONDS);
+            } else {
+                // The player is away until they rejoin, so their deadline starts now
+                turnNumber++;
+                if (Constants.TURN_TIMEOUT_MS > 0) startTurnTimers();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seats a human player if the match hasn't started and has room. A held seat, in a
+     * running or recovered match, is only taken back with its session token (see resume).
+     */
+    public JoinResult join(Player player, Connection handler) throws IOException {
+        lock.lock();
         try {
+            if (started || startClaimed || closed || clients.size() >= humanSeats) return JoinResult.FULL;
+            if (state.seatOf(player.getName()) >= 0) return JoinResult.NAME_TAKEN;
+            addPlayer(player, handler);
+            handler.sendMessage(new Message("INFO", "Joined match " + matchId, "SERVER"));
+            return JoinResult.OK;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Re-sends the turn prompt to a player who comes back while it is their turn. */
+    private void promptIfTheirTurn(String name, Connection handler) {
+        if (!name.equals(state.getCurrentTurn()) || state.isGameOver()) return;
+        if (pendingDice != 0) {
+            int mask = state.legalMoves(state.getCurrentSeat(), pendingDice);
+            handler.sendMessage(new Message(Message.CHOOSE_TOKEN, pendingDice + "|" + mask, "SERVER"));
+        } else {
+            handler.sendMessage(new Message("YOUR_TURN",
+                    Constants.TURN_TIMEOUT_MS > 0 ? String.valueOf(Constants.TURN_TIMEOUT_MS) : "", "SERVER"));
+        }
+    }
+
+    /** Records the hash of the session token issued to a seated player; returns the hash it replaces, if any. */
+    String bindSession(String name, String tokenHash) {
+        lock.lock();
+        try {
+            return sessionHashes.put(name, tokenHash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True if connection is the one currently attached to name's seat. */
+    boolean isConnection(String name, Connection connection) {
+        return clients.get(name) == connection;
+    }
+
+    /**
+     * Detaches a dropped connection but holds the player's seat for the session grace
+     * period. Only a started, unfinished match holds seats. Returns the suspension's
+     * number for endSuspension, or 0 if the player should be removed at once instead.
+     */
+    int suspend(String name, Connection connection) {
+        lock.lock();
+        try {
+            if (!started || closed || state.isGameOver() || !sessionHashes.containsKey(name)
+                    || !clients.remove(name, connection)) return 0;
+            int suspension = ++suspensions;
+            suspended.put(name, suspension);
+            stopTyping(name);
+            broadcast(new Message("INFO", name + " lost connection, holding their seat for "
+                    + Constants.SESSION_GRACE_MS / 1000 + "s", "SERVER"));
             sendUserListToAll();
+            System.out.println("[SERVER] Holding " + name + "'s seat in " + matchId);
+            return suspension;
         } catch (IOException e) {
             e.printStackTrace();
+            return suspended.getOrDefault(name, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the grace period of the given suspension; returns true if the player never came
+     * back and should be removed. False if they resumed, even if they have dropped again since.
+     */
+    boolean endSuspension(String name, int suspension) {
+        lock.lock();
+        try {
+            return suspended.remove(name, suspension);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getSuspendedCount() {
+        lock.lock();
+        try {
+            return suspended.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String getSessionHash(String name) {
+        lock.lock();
+        try {
+            return sessionHashes.get(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Hashes of the session tokens still live in this match. */
+    List<String> getSessionHashes() {
+        lock.lock();
+        try {
+            return new ArrayList<>(sessionHashes.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reattaches a player who presents their session token (by its hash), replacing any
+     * connection still attached (a half-open socket). The player is sent only the state
+     * updates after lastSeq, the last one they applied; a full keyframe is sent if those
+     * are no longer buffered, or if the match was recovered since. Returns false if the
+     * token doesn't match the player's seat.
+     */
+    boolean resume(String name, String tokenHash, int lastSeq, Connection connection) throws IOException {
+        Connection previous;
+        lock.lock();
+        try {
+            if (closed || tokenHash == null || !tokenHash.equals(sessionHashes.get(name))) return false;
+            if (resyncFromKeyframe.remove(name)) lastSeq = -1;
+            suspended.remove(name);
+            previous = clients.put(name, connection);
+            journal(JournalEvent.JOIN, name, null, 0, 0);
+            connection.sendMessage(new Message("INFO", "Resumed match " + matchId, "SERVER"));
+            resync(connection, lastSeq);
+            promptIfTheirTurn(name, connection);
+            broadcast(new Message("INFO", name + " is back!", "SERVER"));
+            sendUserListToAll();
+            ServerMetrics.sessionResumes.increment();
+            System.out.println("[SERVER] " + name + " resumed " + matchId + " from seq " + lastSeq);
+        } finally {
+            lock.unlock();
+        }
+        // Its reader sees that it is no longer attached and leaves the seat alone
+        if (previous != null && previous != connection) previous.close();
+        return true;
+    }
+
+    /** Sends the state updates after lastSeq, or a keyframe of the current board. Caller holds the lock. */
+    private void resync(Connection connection, int lastSeq) {
+        int missed = stateSeq - lastSeq;
+        if (lastSeq >= 0 && missed >= 0 && missed <= recentStates.length) {
+            for (int seq = lastSeq + 1; seq <= stateSeq; seq++) {
+                connection.sendMessage(recentStates[seq % recentStates.length]);
+            }
+            return;
+        }
+        ServerMetrics.resumeKeyframes.increment();
+        connection.sendMessage(new Message(Message.STATE, keyframe(stateSeq, state), "SERVER"));
+    }
+
+    /**
+     * Sends one player a keyframe of the current board, on the match's scheduler thread.
+     * Used once a slow client's queue has drained after it dropped deltas.
+     */
+    void sendKeyframeTo(Connection connection) {
+        botScheduler.execute(() -> {
+            lock.lock();
+            try {
+                if (closed || !clients.containsValue(connection)) return;
+                ServerMetrics.slowConsumerKeyframes.increment();
+                connection.sendMessage(new Message(Message.STATE, keyframe(stateSeq, state), "SERVER"));
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Adds a read-only spectator. The game lock is held only to seed the feed with the
+     * current board; from then on updates reach the spectator through the fan-out thread.
+     */
+    public void watch(Connection connection, ScheduledExecutorService fanout) {
+        lock.lock();
+        try {
+            int count = spectators.add(connection, fanout, stateSeq, state);
+            connection.sendMessage(new Message("INFO",
+                    "Watching match " + matchId + " (" + count + " watching)", "SERVER"));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes a spectator; lock-free. */
+    public void unwatch(Connection connection) {
+        spectators.remove(connection);
+    }
+
+    /** True once every human seat is taken. */
+    public boolean isFull() {
+        lock.lock();
+        try {
+            return clients.size() >= humanSeats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true exactly once, for the caller that should start this match: when it is
+     * full, or with early set as soon as any human is waiting (bots take the empty seats).
+     */
+    public boolean claimStart(boolean early) {
+        lock.lock();
+        try {
+            if (startClaimed || closed || clients.isEmpty() || (!early && clients.size() < humanSeats)) return false;
+            startClaimed = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Seats not taken by a player or bot yet. */
+    public int getOpenSeats() {
+        lock.lock();
+        try {
+            return GameState.SEATS - state.getPlayerCount();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getClientCount() {
+        lock.lock();
+        try {
+            return clients.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getMatchId() { return matchId; }
+    public int getHumanSeats() { return humanSeats; }
+    public long getSeed() { return seed; }
+    public boolean isClosed() { return closed; }
+
+    /** Retires the match; bots stop on their next wake-up and spectators are disconnected. */
+    public void close() {
+        closed = true;
+        spectators.close();
+        lock.lock();
+        try {
+            cancelTurnTimers();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Adds a player to the game and notifies everyone. */
+    public void addPlayer(Player player, Connection handler) throws IOException {
+        lock.lock();
+        try {
+            state.addPlayer(player.getName());
+            clients.put(player.getName(), handler);
+            journal(JournalEvent.JOIN, player.getName(), null, 0, 0);
+            broadcast(new Message("INFO", player.getName() + " joined!", "SERVER"));
+        
+            // Send updated user list to all clients for chat
+            sendUserListToAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes a player/client when disconnected. */
+    public void removeClient(String playerName) {
+        lock.lock();
+        try {
+            clients.remove(playerName);
+            suspended.remove(playerName);
+            sessionHashes.remove(playerName);
+            resyncFromKeyframe.remove(playerName);
+            stopTyping(playerName);
+            boolean hadTurn = playerName.equals(state.getCurrentTurn());
+            if (state.removePlayer(playerName) >= 0) journal(JournalEvent.LEAVE, playerName, null, 0, 0);
+            System.out.println("[SERVER] Removed player: " + playerName + " from " + matchId);
+        
+            // Update user list and board for remaining clients
+            try {
+                sendUserListToAll();
+                if (started) {
+                    sendKeyframe();
+                    // Don't leave the match waiting on a player who is gone
+                    if (hadTurn && !state.isGameOver() && state.getCurrentTurn() != null) {
+                        pendingDice = 0;
+                        nextTurn();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /** Adds a bot player to the game. */
-    public synchronized void addBot(BotPlayer bot) {
-        Player p = new Player(bot.getName());
-        state.addPlayer(p);
-        bots.add(bot);
-        System.out.println("[SERVER] Added bot: " + bot.getName());
+    public void addBot(BotPlayer bot) {
+        lock.lock();
+        try {
+            state.addPlayer(bot.getName());
+            bots.put(bot.getName(), bot);
+            journal(JournalEvent.JOIN, bot.getName(), null, 1, 0);
+            System.out.println("[SERVER] Added bot: " + bot.getName() + " to " + matchId);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** Starts the game after all players have joined. */
-    public synchronized void startGame() throws IOException {
-        broadcast(new Message("INFO", "Game Started with " + state.getPlayers().size() + " players!", "SERVER"));
-        sendUserListToAll();
-        updateAll();
-        nextTurn();
+    public void startGame() throws IOException {
+        lock.lock();
+        try {
+            started = true;
+            StringBuilder seats = new StringBuilder();
+            for (int seat = 0; seat < GameState.SEATS; seat++) {
+                if (seat > 0) seats.append(',');
+                if (state.nameAt(seat) != null) seats.append(state.nameAt(seat));
+            }
+            if (journal != null) {
+                journal.append(new JournalEvent(JournalEvent.START, matchId, null, null, seats.toString(), 0, 0, seed));
+            }
+            broadcast(new Message("INFO", "Game Started with " + state.getPlayerCount() + " players!", "SERVER"));
+            sendUserListToAll();
+            sendKeyframe();
+            nextTurn();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    /** Handles a message received from a client. */
-    public synchronized void handleMessage(Message msg, Player p) throws IOException {
+    /**
+     * Handles a message received from a client.
+     * Chat is routed without taking the game lock, so chat bursts never delay rolls or turns.
+     * Returns false if the message was a roll or token pick the game refused (not the
+     * sender's turn, or not the action the turn is waiting for).
+     */
+    public boolean handleMessage(Message msg, Player p) throws IOException {
         String type = msg.getType();
-        
-        // Handle game messages
-        if (type.equals(Message.ROLL) && p.getName().equals(state.getCurrentTurn())) {
-            int dice = (int) (Math.random() * 6 + 1);
-            movePlayer(p.getName(), dice);
-        }
+
         // Handle public chat messages
-        else if (type.equals(Message.PUBLIC_CHAT)) {
-            broadcastChat(msg);
+        if (type.equals(Message.PUBLIC_CHAT)) {
+            broadcastChat(msg, p);
+            return true;
         }
         // Handle private chat messages
-        else if (type.equals(Message.PRIVATE_CHAT)) {
-            sendPrivateChat(msg);
+        if (type.equals(Message.PRIVATE_CHAT)) {
+            sendPrivateChat(msg, p);
+            return true;
+        }
+        if (type.equals(Message.HISTORY)) {
+            sendHistory(msg.getContent(), p.getName());
+            return true;
+        }
+        if (type.equals(Message.TYPING)) {
+            handleTyping(msg, p.getName());
+            return true;
+        }
+        if (!type.equals(Message.ROLL) && !type.equals(Message.MOVE_TOKEN)) return true;
+
+        lock.lock();
+        try {
+            // Handle game messages; only the player whose turn it is may act
+            if (state.isGameOver() || !p.getName().equals(state.getCurrentTurn())) return false;
+
+            if (type.equals(Message.ROLL) && pendingDice == 0) {
+                takeRoll(p.getName(), rollDice());
+                return true;
+            }
+            if (type.equals(Message.MOVE_TOKEN) && pendingDice != 0) {
+                int seat = state.getCurrentSeat();
+                int token = parseToken(msg.getContent());
+                if (token >= 0 && (state.legalMoves(seat, pendingDice) & (1 << token)) != 0) {
+                    applyMove(seat, token, pendingDice);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
     }
 
-    /** Called when a bot makes a move. */
-    public synchronized void botMove(String botName, int dice) throws IOException {
-        if (botName.equals(state.getCurrentTurn())) {
-            movePlayer(botName, dice);
+    /**
+     * Whether it is this player's turn, read without the lock so connection readers can
+     * rate-limit everyone else's rolls and token picks before they reach handleMessage.
+     */
+    public boolean isTurnOf(String playerName) {
+        return playerName != null && playerName.equals(turnHolder);
+    }
+
+    /** Called when a bot's turn comes up: rolls for it and applies the move it picks. */
+    public void botMove(String botName) throws IOException {
+        lock.lock();
+        try {
+            if (!state.isGameOver() && pendingDice == 0 && botName.equals(state.getCurrentTurn())) {
+                takeRoll(botName, rollDice());
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    /** Moves a player according to their dice roll and updates the game state. */
-    private void movePlayer(String name, int dice) throws IOException {
-        state.movePlayer(name, dice);
-        broadcast(new Message(
-                "MOVE",
-                name + " rolled " + dice + " (pos: " + state.getPlayers().get(name).getPosition() + ")",
-                "SERVER"
-        ));
-        updateAll();
-        nextTurn();
+    /** Runs a task on the match's scheduler thread, so connection I/O threads never wait on the game lock. */
+    void execute(Runnable task) {
+        botScheduler.execute(task);
     }
 
-    /** Moves to the next player's turn. */
+    /** Hands a bot's decision back to the match's scheduler thread. */
+    void submitBotChoice(String botName, int dice, int token) {
+        botScheduler.execute(() -> {
+            try {
+                botChoose(botName, dice, token);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /** Applies a bot's chosen token if the roll it answered is still pending. */
+    private void botChoose(String botName, int dice, int token) throws IOException {
+        lock.lock();
+        try {
+            if (closed || state.isGameOver() || pendingDice != dice || !botName.equals(state.getCurrentTurn())) return;
+            int seat = state.getCurrentSeat();
+            int mask = state.legalMoves(seat, dice);
+            if (token < 0 || (mask & (1 << token)) == 0) {
+                token = BotPlayer.greedyChoice(state, seat, dice, mask); // never leave the turn stuck
+            }
+            applyMove(seat, token, dice);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int rollDice() {
+        rolls++;
+        return dice.nextInt(6) + 1;
+    }
+
+    /**
+     * Applies a roll for the current player. With no legal move the turn passes; a single
+     * legal move is played at once; otherwise a bot is asked to choose, and a human is
+     * sent CHOOSE_TOKEN "dice|mask".
+     */
+    private void takeRoll(String name, int dice) throws IOException {
+        int seat = state.seatOf(name);
+        int mask = state.legalMoves(seat, dice);
+        journal(JournalEvent.ROLL, name, null, dice, 0);
+
+        if (mask == 0) {
+            broadcast(new Message(Message.MOVE, name + " rolled " + dice + " - no move", "SERVER"));
+            state.passTurn(dice);
+            nextTurn();
+            return;
+        }
+
+        BotPlayer bot = bots.get(name);
+        if (Integer.bitCount(mask) == 1) {
+            applyMove(seat, Integer.numberOfTrailingZeros(mask), dice);
+        } else if (bot != null) {
+            // The bot decides on a copy, possibly on search threads, and answers via submitBotChoice
+            pendingDice = dice;
+            bot.chooseToken(state.copy(), seat, dice, mask);
+        } else {
+            pendingDice = dice;
+            broadcast(new Message(Message.INFO, name + " rolled " + dice + ", choosing a token...", "SERVER"));
+            Connection c = clients.get(name);
+            if (c != null) c.sendMessage(new Message(Message.CHOOSE_TOKEN, dice + "|" + mask, "SERVER"));
+        }
+    }
+
+    /** Moves a token, announces the result and passes the turn on (or ends the game). */
+    private void applyMove(int seat, int token, int dice) throws IOException {
+        String name = state.nameAt(seat);
+        int result = state.move(seat, token, dice);
+        if (result == 0) return;
+        pendingDice = 0;
+        journal(JournalEvent.MOVE, name, null, token, dice);
+
+        int to = state.getToken(seat, token);
+        StringBuilder text = new StringBuilder()
+                .append(name).append(" rolled ").append(dice).append(" and moved token ").append(token + 1);
+        if (to == 0) text.append(" into play");
+        else if (to == GameState.FINISHED) text.append(" home");
+        if ((result & GameState.CAPTURED) != 0) {
+            text.append(", capturing");
+            for (int i = 1; i < state.getChangedCount(); i++) {
+                text.append(' ').append(state.nameAt(state.getChanged(i) / GameState.TOKENS));
+            }
+        }
+        broadcast(new Message(Message.MOVE, text.toString(), "SERVER"));
+        sendDelta();
+
+        if ((result & GameState.WON) != 0) {
+            cancelTurnTimers();
+            turnHolder = null;
+            journal(JournalEvent.GAME_OVER, name, null, 0, 0);
+            broadcast(new Message(Message.GAME_OVER, name, "SERVER"));
+            broadcast(new Message(Message.INFO, name + " wins the game!", "SERVER"));
+            System.out.println("[SERVER] " + matchId + " won by " + name);
+        } else {
+            nextTurn();
+        }
+    }
+
+    private static int parseToken(String content) {
+        try {
+            int token = Integer.parseInt(content.trim());
+            return token >= 0 && token < GameState.TOKENS ? token : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Moves to the next player's turn, prompting the human or scheduling the bot. */
     private void nextTurn() throws IOException {
+        cancelTurnTimers();
+        turnNumber++;
+        ServerMetrics.turnsPlayed.increment();
         String current = state.getCurrentTurn();
+        turnHolder = current;
+        if (current == null) return;
+        journal(JournalEvent.TURN, current, null, 0, 0);
+        if (!snapshotted || eventsSinceSnapshot >= Constants.SNAPSHOT_EVERY) writeSnapshot();
         broadcast(new Message("INFO", "It's " + current + "'s turn!", "SERVER"));
-        if (clients.containsKey(current)) {
-            clients.get(current).sendMessage(new Message("YOUR_TURN", "", "SERVER"));
+        BotPlayer bot = bots.get(current);
+        if (bot == null) {
+            // Timed even while the player is away (after a restart), so the match never stalls on them
+            boolean timed = Constants.TURN_TIMEOUT_MS > 0;
+            Connection c = clients.get(current);
+            if (c != null) {
+                c.sendMessage(new Message("YOUR_TURN", timed ? String.valueOf(Constants.TURN_TIMEOUT_MS) : "", "SERVER"));
+            }
+            if (timed) startTurnTimers();
+        } else {
+            // Runs after the lock is released, on the shard's scheduler thread
+            botScheduler.schedule(bot::takeTurn, Constants.BOT_THINK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Arms the warning and the deadline for the human whose turn just began. */
+    private void startTurnTimers() {
+        int turn = turnNumber;
+        int warnAfter = Constants.TURN_TIMEOUT_MS - Constants.TURN_WARNING_MS;
+        if (Constants.TURN_WARNING_MS > 0 && warnAfter > 0) {
+            turnWarning = turnTimers.schedule(() -> botScheduler.execute(() -> warnTurn(turn)), warnAfter);
         }
+        // The wheel thread only hands off; the turn is played on the match's scheduler
+        turnDeadline = turnTimers.schedule(() -> botScheduler.execute(() -> expireTurn(turn)), Constants.TURN_TIMEOUT_MS);
     }
 
-    /** Checks if it’s a bot’s turn. */
-    public synchronized boolean isBotTurn(String name) {
-        return name.equals(state.getCurrentTurn());
+    private void cancelTurnTimers() {
+        if (turnWarning != null) turnWarning.cancel();
+        if (turnDeadline != null) turnDeadline.cancel();
+        turnWarning = null;
+        turnDeadline = null;
     }
 
-    /** Sends updated player positions to all clients. */
-    private void updateAll() throws IOException {
-        StringBuilder sb = new StringBuilder();
-        for (var entry : state.getPlayers().entrySet()) {
-            sb.append(entry.getKey()).append("=")
-              .append(entry.getValue().getPosition()).append(",");
+    private void warnTurn(int turn) {
+        lock.lock();
+        try {
+            if (turn != turnNumber || closed || state.isGameOver()) return;
+            Connection c = clients.get(state.getCurrentTurn());
+            if (c != null) {
+                c.sendMessage(new Message(Message.INFO, "⏰ " + (Constants.TURN_WARNING_MS / 1000)
+                        + " seconds left to play your turn!", "SERVER"));
+            }
+        } finally {
+            lock.unlock();
         }
-        for (ClientHandler ch : clients.values()) {
-            ch.sendMessage(new Message("STATE", sb.toString(), "SERVER"));
+    }
+
+    /**
+     * The current human ran out of time: rolls for them if they hadn't rolled, and moves
+     * the token the greedy bot would pick.
+     */
+    private void expireTurn(int turn) {
+        lock.lock();
+        try {
+            String name = state.getCurrentTurn();
+            if (turn != turnNumber || closed || state.isGameOver() || name == null || bots.containsKey(name)) return;
+            ServerMetrics.turnTimeouts.increment();
+            journal(JournalEvent.TIMEOUT, name, null, 0, 0);
+            Connection c = clients.get(name);
+            if (c != null) c.sendMessage(new Message(Message.TURN_TIMEOUT, name, "SERVER"));
+            broadcast(new Message(Message.INFO, name + " ran out of time, playing automatically", "SERVER"));
+
+            int seat = state.getCurrentSeat();
+            int dice = pendingDice != 0 ? pendingDice : rollDice();
+            int mask = state.legalMoves(seat, dice);
+            if (pendingDice == 0 && Integer.bitCount(mask) <= 1) {
+                takeRoll(name, dice); // passes or plays the only move
+            } else {
+                if (pendingDice == 0) journal(JournalEvent.ROLL, name, null, dice, 0);
+                applyMove(seat, BotPlayer.greedyChoice(state, seat, dice, mask), dice);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
         }
     }
 
-    /** Broadcasts a message to all connected clients. */
-    public synchronized void broadcast(Message msg) {
+    /**
+     * Sends a full keyframe of every seat: "seq|name=p0,p1,p2,p3;...;" with an empty
+     * entry for a free seat. Clients replace their board with it and resume applying
+     * deltas from seq.
+     */
+    private void sendKeyframe() throws IOException {
+        stateSeq++;
+        deltasSinceKeyframe = 0;
+        broadcastState(new Message(Message.STATE, keyframe(stateSeq, state), "SERVER"));
+    }
+
+    /** Formats a keyframe's content; also used by SpectatorFeed for spectators catching up. */
+    static String keyframe(int seq, GameState state) {
+        StringBuilder sb = new StringBuilder().append(seq).append('|');
+        for (int seat = 0; seat < GameState.SEATS; seat++) {
+            String name = state.nameAt(seat);
+            if (name != null) {
+                sb.append(name).append('=');
+                for (int t = 0; t < GameState.TOKENS; t++) {
+                    if (t > 0) sb.append(',');
+                    sb.append(state.getToken(seat, t));
+                }
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sends only the tokens the last move changed: "seq|seat.token=pos;...". Every
+     * KEYFRAME_INTERVAL updates a full keyframe is sent instead, so a client that
+     * missed a delta resyncs.
+     */
+    private void sendDelta() throws IOException {
+        if (++deltasSinceKeyframe >= Constants.KEYFRAME_INTERVAL) {
+            sendKeyframe();
+            return;
+        }
+        stateSeq++;
+        StringBuilder sb = new StringBuilder().append(stateSeq).append('|');
+        for (int i = 0; i < state.getChangedCount(); i++) {
+            int index = state.getChanged(i);
+            int seat = index / GameState.TOKENS;
+            int token = index % GameState.TOKENS;
+            sb.append(seat).append('.').append(token).append('=').append(state.getToken(seat, token)).append(';');
+        }
+        broadcastState(new Message(Message.STATE_DELTA, sb.toString(), "SERVER"));
+    }
+
+    /** Broadcasts a message to all connected clients and spectators. */
+    public void broadcast(Message msg) {
+        lock.lock();
+        try {
+            sendToPlayers(msg);
+            spectators.publish(msg);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Broadcasts a keyframe or delta; spectators also get the board it leaves. Caller holds the lock. */
+    private void broadcastState(Message msg) {
+        recentStates[stateSeq % recentStates.length] = msg;
+        sendToPlayers(msg);
+        spectators.publishState(msg, stateSeq, state);
+    }
+
+    /** Sends to every seated client. Caller holds the lock. */
+    private void sendToPlayers(Message msg) {
         // Avoid sending to disconnected clients
         List<String> toRemove = new ArrayList<>();
-        for (Map.Entry<String, ClientHandler> entry : clients.entrySet()) {
+        for (Map.Entry<String, Connection> entry : clients.entrySet()) {
             try {
                 entry.getValue().sendMessage(msg);
             } catch (Exception e) {
@@ -137,11 +819,19 @@ public class GameManager {
         }
     }
     
-    /** Broadcasts a public chat message to all clients. */
-    private void broadcastChat(Message chatMsg) {
+    /**
+     * Broadcasts a public chat message to all clients. Lock-free: only enqueues on each connection.
+     * The sender is the connection's player, whatever name the client put in the message.
+     */
+    private void broadcastChat(Message chatMsg, Player sender) {
+        chatMsg.setPlayerName(sender.getName());
         System.out.println("[CHAT] Public from " + chatMsg.getPlayerName() + ": " + chatMsg.getContent());
+        journal(JournalEvent.CHAT, chatMsg.getPlayerName(), chatMsg.getContent(), null);
+        logChat(chatMsg);
+        typing.stop(chatMsg.getPlayerName(), null); // receivers clear the indicator when the message arrives
+        chatHistory.record(chatMsg);
         
-        for (ClientHandler ch : clients.values()) {
+        for (Connection ch : clients.values()) {
             try {
                 ch.sendMessage(chatMsg);
             } catch (Exception e) {
@@ -150,15 +840,28 @@ public class GameManager {
         }
     }
     
-    /** Sends a private chat message to a specific recipient. */
-    private void sendPrivateChat(Message chatMsg) {
+    /** Hands a chat message to the durable chat log, if there is one. */
+    private void logChat(Message chatMsg) {
+        if (chatLog == null || chatMsg.getPlayerName() == null || chatMsg.getContent() == null) return;
+        chatLog.append(new ChatLog.Entry(System.currentTimeMillis(), matchId, chatMsg.getPlayerName(),
+                chatMsg.getRecipient(), chatMsg.getContent()));
+    }
+
+    /** Sends a private chat message to a specific recipient. Lock-free like broadcastChat. */
+    private void sendPrivateChat(Message chatMsg, Player from) {
+        // The history ring is keyed by sender and recipient, so the sender must be the authenticated player
+        chatMsg.setPlayerName(from.getName());
         String recipient = chatMsg.getRecipient();
-        String sender = chatMsg.getPlayerName();
+        String sender = from.getName();
         
         System.out.println("[CHAT] Private from " + sender + " to " + recipient + ": " + chatMsg.getContent());
+        journal(JournalEvent.CHAT, sender, chatMsg.getContent(), recipient);
+        logChat(chatMsg);
+        typing.stop(sender, recipient);
+        chatHistory.record(chatMsg);
         
         // Send to recipient
-        ClientHandler recipientHandler = clients.get(recipient);
+        Connection recipientHandler = clients.get(recipient);
         if (recipientHandler != null) {
             try {
                 recipientHandler.sendMessage(chatMsg);
@@ -168,7 +871,7 @@ public class GameManager {
         }
         
         // Send back to sender (for their own chat history)
-        ClientHandler senderHandler = clients.get(sender);
+        Connection senderHandler = clients.get(sender);
         if (senderHandler != null) {
             try {
                 senderHandler.sendMessage(chatMsg);
@@ -178,13 +881,111 @@ public class GameManager {
         }
     }
     
+    /**
+     * Handles TYPING "1" (typing, re-sent every few seconds) or "0" (stopped), to the
+     * recipient or to everyone. Only start and stop transitions are relayed; a run
+     * nobody stops ends after TYPING_EXPIRY_MS without a refresh. Lock-free like chat.
+     */
+    private void handleTyping(Message msg, String name) {
+        String recipient = msg.getRecipient();
+        if (recipient != null && (recipient.equals(name) || !clients.containsKey(recipient))) return;
+        if ("0".equals(msg.getContent())) {
+            if (typing.stop(name, recipient)) relayTyping(name, recipient, false);
+            return;
+        }
+        TypingTracker.Typing run = typing.start(name, recipient, System.currentTimeMillis(), Constants.TYPING_EXPIRY_MS);
+        if (run == null) return;
+        relayTyping(name, recipient, true);
+        scheduleTypingExpiry(run, Constants.TYPING_EXPIRY_MS);
+    }
+
+    private void scheduleTypingExpiry(TypingTracker.Typing run, long delayMillis) {
+        turnTimers.schedule(() -> botScheduler.execute(() -> {
+            long left = typing.expire(run, System.currentTimeMillis());
+            if (left == 0) relayTyping(run.name, run.recipient, false);
+            else if (left > 0) scheduleTypingExpiry(run, left);
+        }), delayMillis);
+    }
+
+    /** Ends whatever name was typing, telling the others (they left or dropped). */
+    private void stopTyping(String name) {
+        for (TypingTracker.Typing run : typing.stopAll(name)) relayTyping(name, run.recipient, false);
+    }
+
+    /** Sends TYPING "1"/"0" from name to the recipient, or to everyone else for public chat. */
+    private void relayTyping(String name, String recipient, boolean on) {
+        Message msg = recipient == null
+                ? new Message(Message.TYPING, on ? "1" : "0", name)
+                : new Message(Message.TYPING, on ? "1" : "0", name, recipient);
+        if (recipient != null) {
+            Connection c = clients.get(recipient);
+            if (c != null) {
+                c.sendMessage(msg);
+                ServerMetrics.typingRelayed.increment();
+            }
+            return;
+        }
+        for (Map.Entry<String, Connection> e : clients.entrySet()) {
+            if (e.getKey().equals(name)) continue;
+            e.getValue().sendMessage(msg);
+            ServerMetrics.typingRelayed.increment();
+        }
+    }
+
+    /**
+     * Answers a HISTORY request "conversation|beforeId|limit" with the page of chat
+     * messages, oldest first, then HISTORY "conversation|hasMore". Lock-free like chat.
+     */
+    private void sendHistory(String request, String requester) {
+        Connection c = clients.get(requester);
+        if (c == null) return;
+        String[] parts = (request == null ? "" : request).split("\\|", -1);
+        String conversation = parts[0];
+        long beforeId = 0;
+        int limit = Constants.CHAT_HISTORY_PAGE;
+        try {
+            if (parts.length > 1 && !parts[1].isEmpty()) beforeId = Long.parseLong(parts[1]);
+            if (parts.length > 2 && !parts[2].isEmpty()) limit = Math.min(limit, Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        boolean[] more = new boolean[1];
+        for (Message m : chatHistory.page(requester, conversation, beforeId, limit, more)) c.sendMessage(m);
+        c.sendMessage(new Message(Message.HISTORY, conversation + "|" + more[0], "SERVER"));
+    }
+
+    private void journal(int type, String name, String text, int a, int b) {
+        if (journal == null) return;
+        journal.append(new JournalEvent(type, matchId, name, null, text, a, b, 0));
+        eventsSinceSnapshot++;
+    }
+
+    /** Checkpoints the match into the journal; recovery replays only the events after it. */
+    private void writeSnapshot() {
+        if (journal == null) return;
+        MatchSnapshot snapshot = new MatchSnapshot(matchId, humanSeats, seed, rolls, pendingDice, state.copy(),
+                bots.keySet(), sessionHashes);
+        journal.append(new JournalEvent(JournalEvent.SNAPSHOT, matchId, snapshot.encode()));
+        eventsSinceSnapshot = 0;
+        snapshotted = true;
+    }
+
+    private void journal(int type, String name, String text, String target) {
+        if (journal != null) journal.append(new JournalEvent(type, matchId, name, target, text, 0, 0, 0));
+    }
+
+    /** Records the match's retirement; called by MatchRegistry. */
+    void journalEnd() {
+        journal(JournalEvent.END, null, null, 0, 0);
+    }
+
     /** Sends the current user list to all connected clients. */
     private void sendUserListToAll() throws IOException {
         String[] userNames = clients.keySet().toArray(new String[0]);
         Message userListMsg = new Message(Message.USER_LIST, "", "SERVER");
         userListMsg.setUserList(userNames);
         
-        for (ClientHandler ch : clients.values()) {
+        for (Connection ch : clients.values()) {
             try {
                 ch.sendMessage(userListMsg);
             } catch (Exception e) {
@@ -0,0 +1,122 @@
+package server;
+
+import model.ByteReader;
+import model.ByteWriter;
+
+import java.io.IOException;
+
+/**
+ * One journaled match event. Every type uses the same few fields:
+ *
+ *   JOIN       name joined (a = 1 for a bot)
+ *   LEAVE      name left
+ *   START      text = seat names in seat order (comma separated, empty for a free seat), c = dice seed
+ *   ROLL       name rolled a (with no legal move this also passes the turn)
+ *   MOVE       name moved token a with dice b
+ *   TURN       it became name's turn
+ *   TIMEOUT    name's turn expired and is played for them
+ *   CHAT       name said text (to target, or to everyone when target is null)
+ *   GAME_OVER  name won
+ *   END        the match was retired
+ *   SNAPSHOT   data = the whole match (MatchSnapshot); replay of a match starts at its latest one
+ *
+ * Encoded as: type byte, varint timestamp (epoch millis), match id, flags for the
+ * optional fields, then name / target / text / data if present and varints a, b, c.
+ */
+public final class JournalEvent {
+    public static final int JOIN = 1;
+    public static final int LEAVE = 2;
+    public static final int START = 3;
+    public static final int ROLL = 4;
+    public static final int MOVE = 5;
+    public static final int TURN = 6;
+    public static final int TIMEOUT = 7;
+    public static final int CHAT = 8;
+    public static final int GAME_OVER = 9;
+    public static final int END = 10;
+    public static final int SNAPSHOT = 11;
+
+    private static final int HAS_NAME = 1;
+    private static final int HAS_TARGET = 1 << 1;
+    private static final int HAS_TEXT = 1 << 2;
+    private static final int HAS_DATA = 1 << 3;
+
+    public final int type;
+    public final long time;
+    public final String matchId;
+    public final String name;
+    public final String target;
+    public final String text;
+    public final int a;
+    public final int b;
+    public final long c;
+    public final byte[] data;
+    long seq;       // assigned by the journal writer
+    byte[] encoded; // set by EventJournal.append
+
+    public JournalEvent(int type, String matchId, String name, String target, String text, int a, int b, long c) {
+        this(type, System.currentTimeMillis(), matchId, name, target, text, a, b, c, null);
+    }
+
+    public JournalEvent(int type, String matchId, byte[] data) {
+        this(type, System.currentTimeMillis(), matchId, null, null, null, 0, 0, 0, data);
+    }
+
+    private JournalEvent(int type, long time, String matchId, String name, String target, String text,
+                         int a, int b, long c, byte[] data) {
+        this.type = type;
+        this.time = time;
+        this.matchId = matchId;
+        this.name = name;
+        this.target = target;
+        this.text = text;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.data = data;
+    }
+
+    /** Position of this event in the journal, in append order across all matches. */
+    public long getSeq() { return seq; }
+
+    byte[] encode() {
+        ByteWriter w = new ByteWriter(32 + (text != null ? text.length() : 0) + (data != null ? data.length : 0));
+        w.writeByte(type);
+        w.writeVarLong(time);
+        w.writeString(matchId);
+        w.writeByte((name != null ? HAS_NAME : 0) | (target != null ? HAS_TARGET : 0) | (text != null ? HAS_TEXT : 0)
+                | (data != null ? HAS_DATA : 0));
+        if (name != null) w.writeString(name);
+        if (target != null) w.writeString(target);
+        if (text != null) w.writeString(text);
+        if (data != null) w.writeBytes(data);
+        w.writeVarLong(a);
+        w.writeVarLong(b);
+        w.writeVarLong(c);
+        return w.toByteArray();
+    }
+
+    static JournalEvent decode(byte[] buf, int offset, int length, long seq) throws IOException {
+        ByteReader r = new ByteReader(buf, offset, offset + length);
+        int type = r.readByte();
+        long time = r.readVarLong();
+        String matchId = r.readString();
+        int flags = r.readByte();
+        String name = (flags & HAS_NAME) != 0 ? r.readString() : null;
+        String target = (flags & HAS_TARGET) != 0 ? r.readString() : null;
+        String text = (flags & HAS_TEXT) != 0 ? r.readString() : null;
+        byte[] data = (flags & HAS_DATA) != 0 ? r.readBytes() : null;
+        int a = (int) r.readVarLong();
+        int b = (int) r.readVarLong();
+        long c = r.readVarLong();
+        JournalEvent e = new JournalEvent(type, time, matchId, name, target, text, a, b, c, data);
+        e.seq = seq;
+        return e;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + seq + " " + type + " " + matchId + " " + name + (target != null ? "->" + target : "")
+                + (text != null ? " '" + text + "'" : "") + " " + a + "," + b + "," + c;
+    }
+}
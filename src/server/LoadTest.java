@@ -0,0 +1,199 @@
+package server;
+
+import model.Message;
+import model.MessageCodec;
+import util.Constants;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Load generator for comparing server modes (-Dludo.threads=platform|virtual,
+ * -Dludo.transport=blocking|nio) at a given connection count. Opens the connections to a
+ * running server, joins them into quick matches and plays every turn at once, so matches
+ * are all-human and move as fast as the server lets them; a finished match's players join
+ * a new one. Reports join time, turns played and turn latency: from sending a roll or
+ * token pick to the server's answer (the move, or the token prompt after a roll).
+ *
+ * The server's side of the comparison (heap and threads at that connection count) is in
+ * its metrics line, so start it with -Dludo.metricsInterval, e.g.:
+ *   java -Dludo.threads=virtual -Dludo.players=4 -Dludo.metricsInterval=10 server.LudoServer
+ *
+ * Usage: java server.LoadTest [connections] [seconds] [host]
+ *   connections  clients to open (default 1000)
+ *   seconds      how long to play after every client has joined (default 60)
+ *   host         server to connect to (default localhost)
+ *
+ * All clients share one selector thread, so the load generator itself stays small.
+ */
+public class LoadTest {
+    private static final int MAX_SAMPLES = 1 << 22;
+
+    private final Selector selector;
+    private final InetSocketAddress address;
+    private final long[] samples = new long[MAX_SAMPLES];
+    private int count;
+    private int joined;
+    private long turns;
+    private long games;
+    private long rejected;
+
+    private LoadTest(InetSocketAddress address) throws IOException {
+        this.selector = Selector.open();
+        this.address = address;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 60;
+        String host = args.length > 2 ? args[2] : Constants.HOST;
+        LoadTest test = new LoadTest(new InetSocketAddress(host, Constants.SERVER_PORT));
+
+        System.out.println("[LOAD] " + connections + " connections to " + host + ":" + Constants.SERVER_PORT);
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) test.connect(new Client("load-" + i));
+        while (test.joined < connections && System.nanoTime() - start < 60_000_000_000L) test.poll(100);
+        double joinSecs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("[LOAD] %d of %d joined in %.2f s (%d refused)%n", test.joined, connections, joinSecs, test.rejected);
+
+        test.count = 0;
+        test.turns = 0;
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) test.poll(100);
+
+        long[] sorted = Arrays.copyOf(test.samples, test.count);
+        Arrays.sort(sorted);
+        System.out.printf("[LOAD] %.0f s: %d turns (%.0f/s), %d games finished%n",
+                seconds, test.turns, test.turns / seconds, test.games);
+        System.out.printf("[LOAD] Turn latency: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        System.exit(0);
+    }
+
+    private void connect(Client client) throws IOException {
+        client.channel = SocketChannel.open(address);
+        client.channel.configureBlocking(false);
+        client.channel.register(selector, SelectionKey.OP_READ, client);
+        client.in.clear();
+        client.out.clear();
+        client.joined = false;
+        client.gameOver = false;
+        client.awaiting = 0;
+        send(client, new Message(Message.JOIN, "", client.name));
+    }
+
+    private void poll(long timeoutMillis) throws IOException {
+        selector.select(timeoutMillis);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Client client = (Client) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) flush(client);
+                if (key.isValid() && key.isReadable()) read(client);
+                if (client.gameOver) {
+                    client.channel.close();
+                    joined--;
+                    connect(client); // straight into the next quick match
+                }
+            } catch (IOException e) {
+                if (client.joined) joined--;
+                else rejected++;
+                client.channel.close();
+            }
+        }
+    }
+
+    private void read(Client client) throws IOException {
+        if (client.channel.read(client.in) < 0) throw new IOException("Closed by server");
+        client.in.flip();
+        while (client.in.remaining() >= 4) {
+            int length = client.in.getInt(client.in.position());
+            if (4 + length > client.in.capacity()) throw new IOException("Frame too large: " + length);
+            if (client.in.remaining() < 4 + length) break;
+            byte[] payload = new byte[length];
+            client.in.position(client.in.position() + 4);
+            client.in.get(payload);
+            handle(client, MessageCodec.BINARY.decode(payload, 0, length));
+            if (client.gameOver) return;
+        }
+        client.in.compact();
+    }
+
+    private void handle(Client client, Message msg) throws IOException {
+        String type = msg.getType();
+        if (!client.joined && Message.INFO.equals(type) && msg.getContent().startsWith("Joined match")) {
+            client.joined = true;
+            joined++;
+        }
+        if (client.awaiting != 0 && (Message.MOVE.equals(type) || Message.CHOOSE_TOKEN.equals(type))) {
+            if (count < samples.length) samples[count++] = System.nanoTime() - client.awaiting;
+            client.awaiting = 0;
+        }
+        switch (type) {
+            case Message.YOUR_TURN:
+                turns++;
+                client.awaiting = System.nanoTime();
+                send(client, new Message(Message.ROLL, "", client.name));
+                break;
+            case Message.CHOOSE_TOKEN:
+                int mask = Integer.parseInt(msg.getContent().substring(msg.getContent().indexOf('|') + 1));
+                client.awaiting = System.nanoTime();
+                send(client, new Message(Message.MOVE_TOKEN, String.valueOf(Integer.numberOfTrailingZeros(mask)), client.name));
+                break;
+            case Message.GAME_OVER:
+                if (msg.getContent().equals(client.name)) games++;
+                client.gameOver = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void send(Client client, Message msg) throws IOException {
+        client.out.add(ByteBuffer.wrap(msg.toFrame(MessageCodec.BINARY)));
+        flush(client);
+    }
+
+    private void flush(Client client) throws IOException {
+        while (!client.out.isEmpty()) {
+            ByteBuffer head = client.out.peek();
+            client.channel.write(head);
+            if (head.hasRemaining()) {
+                client.channel.keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            client.out.poll();
+        }
+        client.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /** One simulated player. */
+    private static final class Client {
+        final String name;
+        final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        SocketChannel channel;
+        boolean joined;
+        boolean gameOver;
+        long awaiting; // when the pending roll or token pick was sent, 0 if none
+
+        Client(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -1,49 +1,71 @@
 package server;
 
 import util.Constants;
+import java.io.IOException;
 import java.net.*;
-import java.util.*;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 
 public class LudoServer {
-    private static final List<ClientHandler> clients = new ArrayList<>();
-    private static final GameManager gameManager = new GameManager();
+    private static final ExecutorService workers = Workers.newPerTaskExecutor(Constants.THREADS);
 
     public static void main(String[] args) {
-        try (ServerSocket serverSocket = new ServerSocket(Constants.SERVER_PORT)) {
-            System.out.println("=== LUDO SERVER STARTED ===");
-            @SuppressWarnings("resource")
-            Scanner sc = new Scanner(System.in);
-            System.out.print("Enter number of players (1–4): ");
-            int playerCount = Math.max(1, Math.min(4, sc.nextInt()));
-
-            System.out.println("Waiting for " + playerCount + " player(s) to connect...");
+        try {
+            System.out.println("=== LUDO SERVER STARTED (" + Constants.TRANSPORT + " transport, "
+                    + Constants.THREADS + " threads) ===");
+            // Matches seat PLAYERS_PER_MATCH humans unless a quick-match request asks for another size;
+            // remaining seats go to bots when a match fills, or after LOBBY_BACKFILL_MS of waiting
+            EventJournal journal = openJournal();
+            MatchRegistry registry = new MatchRegistry(Constants.MATCH_SHARDS, Constants.PLAYERS_PER_MATCH, journal,
+                    openChatLog());
+            if (journal != null) registry.recover(Paths.get(Constants.JOURNAL_DIR));
+            System.out.println("Accepting players, " + Constants.PLAYERS_PER_MATCH + " per match"
+                    + (Constants.LOBBY_BACKFILL_MS > 0 ? ", bots fill quick matches after "
+                    + Constants.LOBBY_BACKFILL_MS / 1000 + "s" : "") + "...");
+            ServerMetrics.startReporter(Constants.METRICS_INTERVAL);
 
-            while (clients.size() < playerCount) {
-                Socket socket = serverSocket.accept();
-                System.out.println("Player connected from: " + socket.getInetAddress());
-                ClientHandler handler = new ClientHandler(socket, gameManager);
-                clients.add(handler);
-                new Thread(handler).start();
+            if ("nio".equals(Constants.TRANSPORT)) {
+                // Selector-based transport; clients must use a framed protocol (binary, the default, or framed)
+                NioServer nioServer = new NioServer(registry, Constants.EVENT_LOOPS, Integer.MAX_VALUE);
+                nioServer.acceptLoop(Constants.SERVER_PORT);
+            } else {
+                acceptBlocking(registry);
             }
 
-            // Add bots if needed
-            int botsToAdd = 4 - playerCount;
-            for (int i = 1; i <= botsToAdd; i++) {
-                BotPlayer bot = new BotPlayer("BOT-" + i, gameManager);
-                gameManager.addBot(bot);
-                new Thread(bot).start();
-            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            // Wait 2 seconds to ensure clients finish JOIN handshake
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException ignored) {
-            }
+    /** Opens the match event journal unless -Dludo.journal=off; it is flushed and synced on shutdown. */
+    private static EventJournal openJournal() throws IOException {
+        if ("off".equalsIgnoreCase(Constants.JOURNAL_DIR)) return null;
+        EventJournal journal = EventJournal.open(Paths.get(Constants.JOURNAL_DIR), Constants.JOURNAL_SEGMENT_MB << 20,
+                EventJournal.FsyncPolicy.valueOf(Constants.JOURNAL_FSYNC.toUpperCase()), Constants.JOURNAL_FSYNC_MS);
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "journal-shutdown"));
+        System.out.println("[SERVER] Journaling match events to " + Constants.JOURNAL_DIR
+                + " (fsync " + Constants.JOURNAL_FSYNC + ")");
+        return journal;
+    }
 
-            gameManager.startGame();
+    /** Opens the searchable chat log unless -Dludo.chatLog=off; see ChatSearch for querying it. */
+    private static ChatLog openChatLog() throws IOException {
+        if ("off".equalsIgnoreCase(Constants.CHAT_LOG_DIR)) return null;
+        ChatLog chatLog = ChatLog.open(Paths.get(Constants.CHAT_LOG_DIR), (long) Constants.CHAT_LOG_SEGMENT_MB << 20);
+        Runtime.getRuntime().addShutdownHook(new Thread(chatLog::close, "chatlog-shutdown"));
+        System.out.println("[SERVER] Logging chat to " + Constants.CHAT_LOG_DIR);
+        return chatLog;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /** Original transport: one ClientHandler task (platform or virtual thread) per connected client. */
+    private static void acceptBlocking(MatchRegistry registry) throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(Constants.SERVER_PORT)) {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true); // writers already batch each burst into one write
+                System.out.println("Player connected from: " + socket.getInetAddress());
+                workers.execute(new ClientHandler(socket, registry, workers));
+            }
         }
     }
 }
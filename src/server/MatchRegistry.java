@@ -0,0 +1,394 @@
+package server;
+
+import model.Message;
+import model.Player;
+import util.Constants;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many concurrent matches in one server process.
+ * Matches are spread over shards by id; each shard has its own match map and a
+ * single scheduler thread for match lifecycle work and bot turns, so independent
+ * matches proceed in parallel on different cores. Turn deadlines for every match
+ * share one timing wheel, and one fan-out thread feeds every match's spectators.
+ */
+public class MatchRegistry {
+    private static final int TURN_TIMER_TICK_MS = 100;
+    private static final String QUICK = "quick";
+    private static final String BOT_PREFIX = "BOT-";
+    private static final SecureRandom SESSION_IDS = new SecureRandom();
+
+    private final Shard[] shards;
+    private final TimingWheel turnTimers = new TimingWheel(TURN_TIMER_TICK_MS, 64, "turn-timers");
+    private final ScheduledExecutorService spectatorFanout = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "spectator-fanout");
+        t.setDaemon(true);
+        return t;
+    });
+    private final EventJournal journal;
+    private final ChatLog chatLog;
+    private final int humanSeats;
+    private final AtomicLong nextMatchId = new AtomicLong();
+    // Live sessions by token hash, so a player whose connection dropped can resume their seat
+    private final Map<String, GameManager> sessions = new ConcurrentHashMap<>();
+    // One open match per quick-match queue, each guarded by its own queue's lock
+    private final Map<String, QuickQueue> quickQueues = new ConcurrentHashMap<>();
+
+    public MatchRegistry(int shardCount, int humanSeats) {
+        this(shardCount, humanSeats, null, null);
+    }
+
+    /** journal and chatLog may be null to run without persistence. */
+    public MatchRegistry(int shardCount, int humanSeats, EventJournal journal, ChatLog chatLog) {
+        this.humanSeats = humanSeats;
+        this.journal = journal;
+        this.chatLog = chatLog;
+        this.shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * Routes a joining player to a match. A blank id, or "quick:N" / "quick:N:queue",
+     * means "quick match": fill the open match of that queue and size (N humans, the
+     * default size if omitted) or create a new one. Any other id names a match to
+     * create or join. Returns null if the player could not be seated.
+     */
+    public GameManager join(String matchId, Player player, Connection connection) throws IOException {
+        GameManager gm;
+        GameManager.JoinResult result;
+        String request = matchId == null ? "" : matchId.trim();
+        if (player.getName() == null || player.getName().toUpperCase().startsWith(BOT_PREFIX)) {
+            // Bots are found by name, so a human named like one would get its seat played for them
+            connection.sendMessage(new Message("INFO",
+                    "Choose a name that doesn't start with " + BOT_PREFIX + "; those are reserved for bots.", "SERVER"));
+            return null;
+        }
+
+        if (isQuick(request)) {
+            QuickQueue queue = quickQueue(request);
+            synchronized (queue) {
+                do {
+                    if (queue.open == null || queue.open.isClosed()) {
+                        queue.open = create("match-" + nextMatchId.incrementAndGet(), queue.seats);
+                        scheduleBackfill(queue.open);
+                    }
+                    gm = queue.open;
+                    result = gm.join(player, connection);
+                    // A taken name only turns this newcomer away; the open match keeps waiting for others
+                    if (result == GameManager.JoinResult.FULL || gm.isFull()) queue.open = null;
+                } while (result == GameManager.JoinResult.FULL);
+            }
+        } else {
+            String id = request;
+            Shard shard = shardFor(id);
+            gm = shard.matches.computeIfAbsent(id,
+                    key -> new GameManager(key, humanSeats, shard.executor, turnTimers, journal, chatLog));
+            result = gm.join(player, connection);
+        }
+
+        if (result != GameManager.JoinResult.OK) {
+            connection.sendMessage(new Message("INFO", result == GameManager.JoinResult.FULL
+                    ? "Match " + gm.getMatchId() + " is full or already started."
+                    : "Name " + player.getName() + " is already taken in " + gm.getMatchId() + ".", "SERVER"));
+            return null;
+        }
+
+        startSession(gm, player.getName(), connection);
+        if (gm.claimStart(false)) {
+            GameManager ready = gm;
+            shardFor(gm.getMatchId()).executor.execute(() -> startMatch(ready));
+        }
+        return gm;
+    }
+
+    /** Adds a read-only spectator to an existing match. Returns null if there is no such match. */
+    public GameManager watch(String matchId, Connection connection) {
+        String id = matchId == null ? "" : matchId.trim();
+        GameManager gm = id.isEmpty() ? null : shardFor(id).matches.get(id);
+        if (gm == null || gm.isClosed()) {
+            connection.sendMessage(new Message("INFO", "No match " + id + " to watch.", "SERVER"));
+            return null;
+        }
+        gm.watch(connection, spectatorFanout);
+        return gm;
+    }
+
+    /**
+     * Reattaches a player to their held seat from a RESUME handshake "token|lastSeq".
+     * Returns null (after telling the client) if the session is unknown or expired.
+     */
+    public GameManager resume(String content, Player player, Connection connection) throws IOException {
+        String[] parts = (content == null ? "" : content).split("\\|", 2);
+        int lastSeq = -1;
+        try {
+            if (parts.length > 1) lastSeq = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException ignored) {
+            // resync with a full keyframe
+        }
+        String hash = hashToken(parts[0]);
+        GameManager gm = sessions.get(hash);
+        if (gm == null || gm.isClosed() || !gm.resume(player.getName(), hash, lastSeq, connection)) {
+            connection.sendMessage(new Message("INFO", "Your session has expired; join again.", "SERVER"));
+            connection.sendMessage(new Message(Message.SESSION, "", "SERVER"));
+            return null;
+        }
+        return gm;
+    }
+
+    /** Issues a session token to a newly seated player. */
+    private void startSession(GameManager gm, String playerName, Connection connection) {
+        byte[] bytes = new byte[16];
+        SESSION_IDS.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+        String hash = hashToken(token);
+        String replaced = gm.bindSession(playerName, hash);
+        if (replaced != null) sessions.remove(replaced);
+        sessions.put(hash, gm);
+        connection.sendMessage(new Message(Message.SESSION, token, "SERVER"));
+    }
+
+    /** Sessions are kept, and journaled in snapshots, by this hash, never by the token itself. */
+    static String hashToken(String token) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK has SHA-256
+        }
+    }
+
+    /**
+     * Handles a dropped connection. In a running match the seat is held for
+     * SESSION_GRACE_MS so the player can resume; otherwise, or once the grace period
+     * runs out, the player is removed and the match retires when no humans remain.
+     */
+    public void leave(GameManager gm, String playerName, Connection connection) {
+        // A connection replaced by a resumed session no longer owns the seat
+        if (!gm.isConnection(playerName, connection)) return;
+        int suspension = Constants.SESSION_GRACE_MS > 0 ? gm.suspend(playerName, connection) : 0;
+        if (suspension > 0) {
+            Shard shard = shardFor(gm.getMatchId());
+            turnTimers.schedule(() -> shard.executor.execute(() -> {
+                if (gm.endSuspension(playerName, suspension)) removePlayer(gm, playerName);
+            }), Constants.SESSION_GRACE_MS);
+            return;
+        }
+        removePlayer(gm, playerName);
+    }
+
+    private void removePlayer(GameManager gm, String playerName) {
+        String hash = gm.getSessionHash(playerName);
+        if (hash != null) sessions.remove(hash);
+        gm.removeClient(playerName);
+        gm.broadcast(new Message("INFO", playerName + " has left the game.", "SERVER"));
+        if (!gm.isClosed() && gm.getClientCount() == 0 && gm.getSuspendedCount() == 0) {
+            retire(gm);
+        }
+    }
+
+    /**
+     * Rebuilds the matches that were in flight when the server last stopped, from each
+     * match's latest journal snapshot plus the events after it. The journal's snapshot
+     * index says where to start reading, and only the latest snapshot of each match is
+     * decoded. A match comes back only if a human still holds a seat; players take their
+     * seats back by resuming their session, and a match nobody returns to within
+     * RECOVERY_REJOIN_MS is retired. Call before accepting connections.
+     */
+    public int recover(Path journalDir) throws IOException {
+        long begin = System.nanoTime();
+        EventJournal.SnapshotIndex index = EventJournal.readSnapshotIndex(journalDir);
+        Map<String, PendingMatch> live = new HashMap<>();
+        long events = EventJournal.replay(journalDir, index == null ? 0 : index.firstNeeded(), e -> {
+            if (e.matchId == null) return;
+            bumpMatchId(e.matchId);
+            if (index != null && !index.needed(e.matchId, e.seq)) return;
+            if (e.type == JournalEvent.SNAPSHOT) {
+                live.put(e.matchId, new PendingMatch(e.data)); // supersedes the previous one, undecoded
+                return;
+            }
+            PendingMatch match = live.get(e.matchId);
+            if (match == null || !MatchSnapshot.affects(e.type)) return;
+            if (e.type == JournalEvent.GAME_OVER || e.type == JournalEvent.END) live.remove(e.matchId);
+            else match.events.add(e);
+        });
+
+        int recovered = 0;
+        for (Map.Entry<String, PendingMatch> entry : live.entrySet()) {
+            MatchSnapshot snapshot;
+            try {
+                snapshot = MatchSnapshot.decode(entry.getKey(), entry.getValue().snapshot);
+            } catch (IOException ex) {
+                System.err.println("[SERVER] Skipping bad snapshot of " + entry.getKey() + ": " + ex.getMessage());
+                continue;
+            }
+            for (JournalEvent e : entry.getValue().events) snapshot.apply(e);
+            if (snapshot.state.isGameOver() || snapshot.state.getCurrentTurn() == null || !snapshot.hasHumans()) continue;
+            Shard shard = shardFor(snapshot.matchId);
+            GameManager gm = GameManager.restore(snapshot, shard.executor, turnTimers, journal, chatLog);
+            shard.matches.put(snapshot.matchId, gm);
+            for (String hash : gm.getSessionHashes()) sessions.put(hash, gm);
+            shard.executor.execute(gm::resumeAfterRecovery);
+            shard.executor.schedule(() -> {
+                if (!gm.isClosed() && gm.getClientCount() == 0 && gm.getSuspendedCount() == 0) retire(gm);
+            }, Constants.RECOVERY_REJOIN_MS, TimeUnit.MILLISECONDS);
+            recovered++;
+        }
+        System.out.printf("[SERVER] Recovered %d match(es) from %s in %d ms (%d events replayed)%n", recovered,
+                journalDir, (System.nanoTime() - begin) / 1_000_000, events);
+        return recovered;
+    }
+
+    /** A match's latest snapshot, still encoded, and the events journaled after it. */
+    private static final class PendingMatch {
+        final byte[] snapshot;
+        final List<JournalEvent> events = new ArrayList<>();
+
+        PendingMatch(byte[] snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    /** Keeps quick-match ids from colliding with recovered "match-N" ids. */
+    private void bumpMatchId(String matchId) {
+        if (!matchId.startsWith("match-")) return;
+        try {
+            long n = Long.parseLong(matchId.substring("match-".length()));
+            nextMatchId.accumulateAndGet(n, Math::max);
+        } catch (NumberFormatException ignored) {
+            // a named match, not a quick-match id
+        }
+    }
+
+    public int getMatchCount() {
+        int count = 0;
+        for (Shard shard : shards) count += shard.matches.size();
+        return count;
+    }
+
+    /** Parses "quick[:seats[:queue]]"; a missing or invalid size means the default. */
+    private QuickQueue quickQueue(String request) {
+        String[] parts = request.split(":", 3);
+        int seats = humanSeats;
+        if (parts.length > 1) {
+            try {
+                seats = Math.max(1, Math.min(4, Integer.parseInt(parts[1].trim())));
+            } catch (NumberFormatException ignored) {
+                // keep the default size
+            }
+        }
+        String name = parts.length > 2 ? parts[2].trim() : "";
+        int size = seats;
+        return quickQueues.computeIfAbsent(size + ":" + name, key -> new QuickQueue(size));
+    }
+
+    private GameManager create(String id, int seats) {
+        Shard shard = shardFor(id);
+        GameManager gm = new GameManager(id, seats, shard.executor, turnTimers, journal, chatLog);
+        shard.matches.put(id, gm);
+        return gm;
+    }
+
+    /** Starts a quick match with bots in the empty seats if it is still waiting after LOBBY_BACKFILL_MS. */
+    private void scheduleBackfill(GameManager gm) {
+        if (Constants.LOBBY_BACKFILL_MS <= 0 || gm.getHumanSeats() <= 1) return;
+        Shard shard = shardFor(gm.getMatchId());
+        turnTimers.schedule(() -> shard.executor.execute(() -> {
+            if (gm.claimStart(true)) startMatch(gm);
+        }), Constants.LOBBY_BACKFILL_MS);
+    }
+
+    /** Fills empty seats with bots and starts the game. Runs on the match's shard thread. */
+    private void startMatch(GameManager gm) {
+        if (gm.isClosed()) return;
+        try {
+            int bots = gm.getOpenSeats();
+            for (int i = 1; i <= bots; i++) {
+                gm.addBot(new BotPlayer(BOT_PREFIX + i, gm));
+            }
+            gm.startGame();
+            System.out.println("[SERVER] Started " + gm.getMatchId() + " with seed " + gm.getSeed()
+                    + " (" + getMatchCount() + " active matches)");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void retire(GameManager gm) {
+        gm.close();
+        for (String hash : gm.getSessionHashes()) sessions.remove(hash);
+        gm.journalEnd();
+        shardFor(gm.getMatchId()).matches.remove(gm.getMatchId(), gm);
+        for (QuickQueue queue : quickQueues.values()) {
+            synchronized (queue) {
+                if (queue.open == gm) queue.open = null;
+            }
+        }
+        System.out.println("[SERVER] Retired " + gm.getMatchId());
+    }
+
+    /**
+     * Runs a handshake on the shard executor of the match it is for: the named match, the
+     * match a resumed session belongs to, or the open match of a quick queue (the next
+     * match id if the queue has none open).
+     */
+    public void executeHandshake(Message handshake, Runnable task) {
+        String content = handshake.getContent() == null ? "" : handshake.getContent().trim();
+        String target = content;
+        if (Message.RESUME.equals(handshake.getType())) {
+            GameManager gm = sessions.get(hashToken(content.split("\\|", 2)[0]));
+            if (gm != null) target = gm.getMatchId();
+        } else if (!Message.SPECTATE.equals(handshake.getType()) && isQuick(content)) {
+            GameManager open = quickQueue(content).open;
+            target = open != null ? open.getMatchId() : "match-" + (nextMatchId.get() + 1);
+        }
+        shardFor(target).executor.execute(task);
+    }
+
+    private static boolean isQuick(String request) {
+        return request.isEmpty() || request.equals(QUICK) || request.startsWith(QUICK + ":");
+    }
+
+    private Shard shardFor(String matchId) {
+        return shards[Math.floorMod(matchId.hashCode(), shards.length)];
+    }
+
+    private static class QuickQueue {
+        final int seats;
+        volatile GameManager open; // the match new players in this queue fill; written under this
+
+        QuickQueue(int seats) {
+            this.seats = seats;
+        }
+    }
+
+    private static class Shard {
+        final Map<String, GameManager> matches = new ConcurrentHashMap<>();
+        final ScheduledExecutorService executor;
+
+        Shard(int index) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "match-shard-" + index);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package server;
+
+import model.ByteReader;
+import model.ByteWriter;
+import model.GameState;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything needed to bring a match back after a restart: the board, which seats are
+ * bots, the number of human seats, the dice seed with the number of rolls used so far,
+ * and a hash of each human's session token, so only that player can resume the seat.
+ * Stored in the journal as a SNAPSHOT event; recovery takes a match's latest
+ * snapshot and applies the events journaled after it.
+ */
+public class MatchSnapshot {
+    private static final int VERSION = 1;
+
+    final String matchId;
+    final int humanSeats;
+    final long seed;
+    long rolls;
+    int pendingDice;
+    final GameState state;
+    final Set<String> bots;
+    final Map<String, String> sessions; // player name -> hash of their session token
+    boolean finished;
+
+    MatchSnapshot(String matchId, int humanSeats, long seed, long rolls, int pendingDice, GameState state,
+                  Collection<String> bots, Map<String, String> sessions) {
+        this.matchId = matchId;
+        this.humanSeats = humanSeats;
+        this.seed = seed;
+        this.rolls = rolls;
+        this.pendingDice = pendingDice;
+        this.state = state;
+        this.bots = new HashSet<>(bots);
+        this.sessions = new HashMap<>(sessions);
+    }
+
+    byte[] encode() {
+        ByteWriter w = new ByteWriter(128);
+        w.writeByte(VERSION);
+        w.writeVarLong(humanSeats);
+        w.writeVarLong(seed);
+        w.writeVarLong(rolls);
+        w.writeVarLong(pendingDice);
+        state.writeTo(w);
+        w.writeVarLong(bots.size());
+        for (String bot : bots) w.writeString(bot);
+        w.writeVarLong(sessions.size());
+        for (Map.Entry<String, String> session : sessions.entrySet()) {
+            w.writeString(session.getKey());
+            w.writeString(session.getValue());
+        }
+        return w.toByteArray();
+    }
+
+    static MatchSnapshot decode(String matchId, byte[] data) throws IOException {
+        ByteReader r = new ByteReader(data, 0, data.length);
+        int version = r.readByte();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+        int humanSeats = (int) r.readVarLong();
+        long seed = r.readVarLong();
+        long rolls = r.readVarLong();
+        int pendingDice = (int) r.readVarLong();
+        GameState state = GameState.readFrom(r);
+        int count = (int) r.readVarLong();
+        Set<String> bots = new HashSet<>();
+        for (int i = 0; i < count; i++) bots.add(r.readString());
+        count = (int) r.readVarLong();
+        Map<String, String> sessions = new HashMap<>();
+        for (int i = 0; i < count; i++) sessions.put(r.readString(), r.readString());
+        return new MatchSnapshot(matchId, humanSeats, seed, rolls, pendingDice, state, bots, sessions);
+    }
+
+    /** Applies one event journaled after this snapshot, the way GameManager applied it live. */
+    void apply(JournalEvent e) {
+        switch (e.type) {
+            case JournalEvent.ROLL: {
+                rolls++;
+                int seat = state.seatOf(e.name);
+                if (seat < 0) break;
+                if (state.legalMoves(seat, e.a) == 0) {
+                    state.passTurn(e.a);
+                } else {
+                    pendingDice = e.a; // the MOVE that follows clears it
+                }
+                break;
+            }
+            case JournalEvent.MOVE: {
+                int seat = state.seatOf(e.name);
+                if (seat >= 0) state.move(seat, e.a, e.b);
+                pendingDice = 0;
+                break;
+            }
+            case JournalEvent.LEAVE: {
+                if (e.name.equals(state.getCurrentTurn())) pendingDice = 0;
+                state.removePlayer(e.name);
+                bots.remove(e.name);
+                sessions.remove(e.name);
+                break;
+            }
+            case JournalEvent.GAME_OVER:
+            case JournalEvent.END:
+                finished = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** True for the event types apply() acts on; recovery keeps only these. */
+    static boolean affects(int type) {
+        switch (type) {
+            case JournalEvent.ROLL:
+            case JournalEvent.MOVE:
+            case JournalEvent.LEAVE:
+            case JournalEvent.GAME_OVER:
+            case JournalEvent.END:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** True if a human still holds a seat, so someone can come back to this match. */
+    boolean hasHumans() {
+        for (int seat = 0; seat < GameState.SEATS; seat++) {
+            String name = state.nameAt(seat);
+            if (name != null && !bots.contains(name)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,281 @@
+package server;
+
+import model.GameState;
+import util.Constants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Monte Carlo tree search bot, run in parallel within a wall-clock budget.
+ *
+ * The tree alternates decision nodes (a seat to move with a known roll, one child per
+ * legal token) and chance nodes (the next roll, sampled uniformly). At a decision node
+ * the child is chosen by UCT on the moving seat's own average reward, so every seat
+ * plays for itself. Rollouts play a few rounds ahead with a mostly-greedy policy and
+ * reward the winner, or each seat's share of the progress if nobody has won yet.
+ *
+ * All searches share one fork-join pool of BOT_SEARCH_THREADS, separate from the I/O
+ * and match threads. Each search forks one worker per pool thread onto a single shared
+ * tree; a visit is counted on the way down (virtual loss) so concurrent workers spread
+ * over different branches. Workers stop at the deadline even if they started late, so
+ * a busy pool just means fewer iterations.
+ *
+ * The tree is kept between decisions: on the bot's next turn the search looks for the
+ * current position among the nodes it already explored and continues from there.
+ */
+public class MctsStrategy implements BotStrategy {
+    private static final ForkJoinPool POOL = new ForkJoinPool(Constants.BOT_SEARCH_THREADS, pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("bot-search-" + t.getPoolIndex());
+        return t;
+    }, null, false);
+
+    private static final double EXPLORATION = 0.7;
+    private static final double ROLLOUT_RANDOM_MOVES = 0.2;
+    // Rollouts stop after this many plies and score the position; full playouts are too noisy
+    private static final int ROLLOUT_PLIES = 40;
+    // Position score: progress, plus a bonus for being out of base and for reaching the home column
+    private static final int OUT_BONUS = 10;
+    private static final int HOME_BONUS = 10;
+    // Largest old tree scanned for the current position before starting afresh
+    private static final int MAX_REUSE_SCAN = 500_000;
+
+    private final long budgetNanos;
+    private Node lastRoot; // a bot runs one search at a time
+
+    public MctsStrategy(int budgetMs) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
+
+    @Override
+    public int chooseToken(GameState state, int seat, int dice, int mask) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        chooseTokenAsync(state, seat, dice, mask, result::complete);
+        return result.join();
+    }
+
+    @Override
+    public void chooseTokenAsync(GameState state, int seat, int dice, int mask, IntConsumer done) {
+        if (Integer.bitCount(mask) == 1) {
+            done.accept(Integer.numberOfTrailingZeros(mask));
+            return;
+        }
+        Node reused = reuse(state, dice);
+        Node root = reused != null ? reused : new Node(state.copy(), dice);
+        long deadline = System.nanoTime() + budgetNanos;
+        int workers = POOL.getParallelism();
+        AtomicInteger running = new AtomicInteger(workers);
+        for (int i = 0; i < workers; i++) {
+            POOL.execute(() -> {
+                try {
+                    ThreadLocalRandom rng = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        iterate(root, rng);
+                    }
+                } finally {
+                    if (running.decrementAndGet() == 0) {
+                        lastRoot = root;
+                        done.accept(best(root, state, seat, dice, mask));
+                    }
+                }
+            });
+        }
+    }
+
+    /** The most visited move at the root, or the greedy move if the search didn't try them all. */
+    private static int best(Node root, GameState state, int seat, int dice, int mask) {
+        int best = -1;
+        int bestVisits = -1;
+        for (int i = 0; i < root.children.length; i++) {
+            Node child = root.children[i];
+            if (child == null) return BotPlayer.greedyChoice(state, seat, dice, mask);
+            if (child.visits > bestVisits) {
+                bestVisits = child.visits;
+                best = root.actions[i];
+            }
+        }
+        return best;
+    }
+
+    /** Finds the current position in the previous search tree, so its statistics carry over. */
+    private Node reuse(GameState state, int dice) {
+        Node old = lastRoot;
+        lastRoot = null;
+        if (old == null) return null;
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(old);
+        int scanned = 0;
+        while (!queue.isEmpty() && scanned++ < MAX_REUSE_SCAN) {
+            Node n = queue.poll();
+            if (n != old && n.dice == dice && n.state.samePosition(state)) return n;
+            if (n.children == null) continue;
+            for (Node c : n.children) {
+                if (c != null) queue.add(c);
+            }
+        }
+        return null;
+    }
+
+    /** One selection, expansion, rollout and backpropagation pass. */
+    private static void iterate(Node root, ThreadLocalRandom rng) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        synchronized (node) {
+            node.visits++;
+        }
+        path.add(node);
+        while (!node.state.isGameOver()) {
+            Node next;
+            boolean expanded = false;
+            synchronized (node) {
+                int i = node.isDecision() ? select(node) : rng.nextInt(6);
+                next = node.children[i];
+                if (next == null) {
+                    next = node.isDecision() ? node.play(i) : new Node(node.state, i + 1);
+                    node.children[i] = next;
+                    expanded = true;
+                }
+            }
+            synchronized (next) {
+                next.visits++;
+            }
+            path.add(next);
+            node = next;
+            if (expanded) break;
+        }
+
+        double[] reward = rollout(node.state, node.dice, rng);
+        for (Node n : path) {
+            synchronized (n) {
+                for (int s = 0; s < GameState.SEATS; s++) n.reward[s] += reward[s];
+            }
+        }
+    }
+
+    /** UCT over a decision node's moves from the moving seat's point of view; untried moves first. */
+    private static int select(Node node) {
+        int seat = node.state.getCurrentSeat();
+        double logVisits = Math.log(node.visits);
+        int best = 0;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < node.children.length; i++) {
+            Node child = node.children[i];
+            if (child == null) return i;
+            // Read without the child's lock: a slightly stale count only nudges exploration
+            double value = child.reward[seat] / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /** Plays on from a position (with the first roll already known if dice != 0). */
+    private static double[] rollout(GameState start, int dice, ThreadLocalRandom rng) {
+        GameState s = start.copy();
+        for (int ply = 0; ply < ROLLOUT_PLIES && !s.isGameOver(); ply++) {
+            int seat = s.getCurrentSeat();
+            if (seat < 0) break;
+            int roll = dice != 0 ? dice : rng.nextInt(6) + 1;
+            dice = 0;
+            int mask = s.legalMoves(seat, roll);
+            if (mask == 0) {
+                s.passTurn(roll);
+            } else {
+                s.move(seat, rolloutChoice(s, seat, roll, mask, rng), roll);
+            }
+        }
+        return score(s);
+    }
+
+    private static int rolloutChoice(GameState s, int seat, int dice, int mask, ThreadLocalRandom rng) {
+        if (rng.nextDouble() < ROLLOUT_RANDOM_MOVES) {
+            int pick = rng.nextInt(Integer.bitCount(mask));
+            for (int t = 0; t < GameState.TOKENS; t++) {
+                if ((mask & (1 << t)) != 0 && pick-- == 0) return t;
+            }
+        }
+        return BotPlayer.greedyChoice(s, seat, dice, mask);
+    }
+
+    /** 1 for the winner; otherwise each seat's share of the total position score. */
+    private static double[] score(GameState s) {
+        double[] reward = new double[GameState.SEATS];
+        if (s.isGameOver()) {
+            reward[s.getWinner()] = 1;
+            return reward;
+        }
+        double total = 0;
+        for (int seat = 0; seat < GameState.SEATS; seat++) {
+            if (s.nameAt(seat) == null) continue;
+            for (int t = 0; t < GameState.TOKENS; t++) {
+                int p = s.getToken(seat, t);
+                reward[seat] += p == GameState.IN_BASE ? 0 : p + OUT_BONUS + (p > GameState.LAST_TRACK ? HOME_BONUS : 0);
+            }
+            total += reward[seat];
+        }
+        for (int seat = 0; seat < GameState.SEATS; seat++) {
+            reward[seat] = total > 0 ? reward[seat] / total : 0;
+        }
+        return reward;
+    }
+
+    /**
+     * A decision node (dice != 0: the seat to move has rolled dice) or a chance node
+     * (dice == 0: the next roll is unknown). Fields other than state and dice are
+     * guarded by the node's monitor.
+     */
+    private static final class Node {
+        final GameState state;
+        final int dice;
+        final int[] actions; // decision nodes: legal tokens, or -1 for a forced pass
+        final Node[] children;
+        int visits;
+        final double[] reward = new double[GameState.SEATS];
+
+        Node(GameState state, int dice) {
+            this.state = state;
+            this.dice = dice;
+            if (dice == 0) {
+                actions = null;
+                children = new Node[6];
+            } else {
+                int mask = state.legalMoves(state.getCurrentSeat(), dice);
+                if (mask == 0) {
+                    actions = new int[]{-1};
+                } else {
+                    actions = new int[Integer.bitCount(mask)];
+                    for (int t = 0, i = 0; t < GameState.TOKENS; t++) {
+                        if ((mask & (1 << t)) != 0) actions[i++] = t;
+                    }
+                }
+                children = new Node[actions.length];
+            }
+        }
+
+        boolean isDecision() {
+            return dice != 0;
+        }
+
+        /** The chance node reached by taking action i. */
+        Node play(int i) {
+            GameState next = state.copy();
+            if (actions[i] < 0) {
+                next.passTurn(dice);
+            } else {
+                next.move(next.getCurrentSeat(), actions[i], dice);
+            }
+            return new Node(next, 0);
+        }
+    }
+}
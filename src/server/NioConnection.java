@@ -0,0 +1,287 @@
+package server;
+
+import model.*;
+import util.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A client connection on the non-blocking transport.
+ * All socket I/O happens on the owning EventLoop; sendMessage may be called from any thread.
+ * Only the framed protocol is supported here, since object streams can't be decoded incrementally.
+ * The handshake and game actions run on the match's shard executor, so a busy match
+ * never stalls the other connections on this loop.
+ */
+public class NioConnection implements Connection {
+    private static final int INITIAL_READ_BUFFER = 1024;
+    private static final int MAX_GATHER = 16; // frames per gathering write
+    private static final int MAX_HELD = 64; // frames read while the handshake is still running
+
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final MatchRegistry registry;
+    private volatile MessageCodec codec; // detected from the JOIN frame
+    private final OutboundQueue outbound = OutboundQueue.fromConfig();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    // Frames taken from the queue but not fully written yet; loop thread only
+    private final ByteBuffer[] pending = new ByteBuffer[MAX_GATHER];
+    private int pendingStart = 0;
+    private int pendingEnd = 0;
+    private SelectionKey key;
+    private Player player;
+    private volatile GameManager gameManager;
+    private ArrayDeque<Message> held; // frames waiting for the handshake; loop thread only
+    private boolean spectating = false; // read-only viewer; its messages are ignored
+    private final RateLimiter limiter = new RateLimiter(); // loop thread only
+
+    public NioConnection(SocketChannel channel, EventLoop loop, MatchRegistry registry) {
+        this.channel = channel;
+        this.loop = loop;
+        this.registry = registry;
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    /** Reads what is available and dispatches every complete frame. Loop thread only. */
+    void onReadable() {
+        try {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                System.out.println("[SERVER] Player " +
+                        (player != null ? player.getName() : "unknown") + " disconnected.");
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            while (!closed.get() && readBuffer.remaining() >= 4) { // a flooding client may be closed mid-batch
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 0 || length > Constants.MAX_FRAME_SIZE) {
+                    throw new IOException("Frame too large: " + length);
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    if (readBuffer.capacity() < 4 + length) {
+                        growReadBuffer(4 + length);
+                        return;
+                    }
+                    break;
+                }
+                readBuffer.position(readBuffer.position() + 4);
+                if (codec == null) {
+                    if (length == 0) throw new IOException("Empty frame");
+                    codec = MessageCodec.detect(readBuffer.array(), readBuffer.position());
+                }
+                Message msg = codec.decode(readBuffer.array(), readBuffer.position(), length);
+                readBuffer.position(readBuffer.position() + length);
+                dispatch(msg);
+            }
+            readBuffer.compact();
+        } catch (Exception e) {
+            if (!(e instanceof IOException)) e.printStackTrace();
+            close();
+        }
+    }
+
+    private void growReadBuffer(int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        bigger.put(readBuffer); // readBuffer is in read mode here
+        readBuffer = bigger;
+    }
+
+    private void dispatch(Message msg) throws IOException {
+        if (held != null) {
+            if (held.size() >= MAX_HELD) throw new IOException("Too many frames before the handshake finished");
+            held.add(msg);
+        } else if (player == null) {
+            handshake(msg);
+        } else if (gameManager != null && !spectating) {
+            boolean myTurn = gameManager.isTurnOf(player.getName());
+            if (!admit(limiter.check(msg, myTurn, System.nanoTime()))) return;
+            String type = msg.getType();
+            if (Message.ROLL.equals(type) || Message.MOVE_TOKEN.equals(type)) {
+                // Game actions take the match lock; run them where the match's timers and bots run
+                GameManager gm = gameManager;
+                gm.execute(() -> {
+                    try {
+                        // Out-of-turn actions were charged above; the turn holder's are charged only if refused
+                        if (!gm.handleMessage(msg, player) && myTurn) loop.execute(this::refused);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            } else {
+                gameManager.handleMessage(msg, player); // chat, history and typing never wait on the lock
+            }
+        }
+    }
+
+    /**
+     * Starts the JOIN, RESUME or SPECTATE handshake, which must be the first frame, on the
+     * match's shard executor. Frames that arrive before it finishes are held and
+     * dispatched afterwards, in order.
+     */
+    private void handshake(Message msg) {
+        player = new Player(msg.getPlayerName());
+        spectating = Message.SPECTATE.equals(msg.getType());
+        held = new ArrayDeque<>();
+        registry.executeHandshake(msg, () -> {
+            GameManager gm = null;
+            try {
+                if (spectating) {
+                    gm = registry.watch(msg.getContent(), this);
+                } else if (Message.RESUME.equals(msg.getType())) {
+                    gm = registry.resume(msg.getContent(), player, this);
+                } else {
+                    gm = registry.join(msg.getContent(), player, this);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            GameManager joined = gm;
+            loop.execute(() -> joined(joined)); // after the rejection notice, if any, is flushed
+        });
+    }
+
+    /** Finishes the handshake on the loop thread. */
+    private void joined(GameManager gm) {
+        if (gm == null) {
+            close();
+            return;
+        }
+        gameManager = gm;
+        System.out.println("[SERVER] " + (spectating ? "Spectator" : "Player") + " joined: " + player.getName());
+        if (closed.get()) {
+            release(gm); // dropped while the handshake ran
+            return;
+        }
+        ArrayDeque<Message> backlog = held;
+        held = null;
+        try {
+            Message next;
+            while (!closed.get() && (next = backlog.poll()) != null) dispatch(next);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /** Charges a roll or token pick the match refused against the action limit. Loop thread only. */
+    private void refused() {
+        if (!closed.get()) admit(limiter.refused(System.nanoTime()));
+    }
+
+    /** Applies a rate-limit verdict; false if the message is dropped. A flooding client is closed. */
+    private boolean admit(RateLimiter.Verdict verdict) {
+        switch (verdict) {
+            case ALLOW:
+                return true;
+            case NOTIFY:
+                sendMessage(RateLimiter.notice());
+                return false;
+            case DISCONNECT:
+                System.out.println("[SERVER] Disconnecting flooding client " + player.getName());
+                close();
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /** Queues the message for the event loop to write. */
+    @Override
+    public void sendMessage(Message msg) {
+        if (closed.get() || codec == null) return;
+        if (!outbound.offer(msg)) {
+            System.out.println("[SERVER] Evicting slow client " +
+                    (player != null ? player.getName() : "unknown"));
+            ServerMetrics.slowConsumerEvictions.increment();
+            outbound.close();
+            loop.execute(this::close);
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::onWritable);
+        }
+    }
+
+    /**
+     * Writes queued messages until the socket would block. Loop thread only.
+     * Each frame is a view over the message's shared encoded bytes, so a broadcast is
+     * encoded once for all recipients, and up to MAX_GATHER frames go out per gathering write.
+     */
+    void onWritable() {
+        if (closed.get() || key == null) {
+            flushScheduled.set(false);
+            return;
+        }
+        try {
+            while (true) {
+                if (pendingStart == pendingEnd) {
+                    pendingStart = pendingEnd = 0;
+                    Message msg;
+                    while (pendingEnd < MAX_GATHER && (msg = outbound.poll()) != null) {
+                        pending[pendingEnd++] = ByteBuffer.wrap(msg.toFrame(codec));
+                    }
+                    if (pendingEnd == 0) break;
+                    ServerMetrics.framesWritten.add(pendingEnd);
+                }
+                long written = channel.write(pending, pendingStart, pendingEnd - pendingStart);
+                if (written > 0) ServerMetrics.recordSocketWrite(written);
+                while (pendingStart < pendingEnd && !pending[pendingStart].hasRemaining()) {
+                    pending[pendingStart++] = null;
+                }
+                if (pendingStart < pendingEnd) {
+                    // Socket buffer is full; resume when the selector says we can write
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            flushScheduled.set(false);
+            if (outbound.takeKeyframeNeeded() && gameManager != null) gameManager.sendKeyframeTo(this);
+            // A sender may have queued a frame after our last peek
+            if (outbound.size() > 0 && flushScheduled.compareAndSet(false, true)) {
+                loop.execute(this::onWritable);
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public int backlog() {
+        return outbound.size();
+    }
+
+    /** Safely closes this client's connection and notifies others. */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        outbound.close();
+
+        GameManager gm = gameManager;
+        if (gm != null) release(gm);
+    }
+
+    /** Gives up this connection's place in the match: a spectator's view, or a player's seat. */
+    private void release(GameManager gm) {
+        if (spectating) {
+            gm.unwatch(this);
+        } else {
+            gm.execute(() -> registry.leave(gm, player.getName(), this));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking server transport: one acceptor thread plus a small fixed pool of
+ * EventLoops, instead of one blocked thread per client.
+ */
+public class NioServer {
+    private final MatchRegistry registry;
+    private final EventLoop[] loops;
+    private final int maxConnections;
+    private int accepted = 0;
+    private int next = 0;
+
+    public NioServer(MatchRegistry registry, int loopCount, int maxConnections) throws IOException {
+        this.registry = registry;
+        this.maxConnections = maxConnections;
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            Thread t = new Thread(loops[i], "nio-loop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /** Accepts connections on the calling thread until maxConnections have connected. */
+    public void acceptLoop(int port) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            while (getAccepted() < maxConnections) {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                System.out.println("Player connected from: " + channel.socket().getInetAddress());
+
+                EventLoop loop = loops[next++ % loops.length];
+                NioConnection connection = new NioConnection(channel, loop, registry);
+                loop.register(channel, connection);
+                synchronized (this) {
+                    accepted++;
+                }
+            }
+        }
+    }
+
+    public synchronized int getAccepted() {
+        return accepted;
+    }
+
+    public void shutdown() {
+        for (EventLoop loop : loops) loop.shutdown();
+    }
+}
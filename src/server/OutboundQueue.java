@@ -0,0 +1,195 @@
+package server;
+
+import model.Message;
+import util.Constants;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded per-connection queue of messages waiting to be written.
+ * Producers (game and chat threads) never block on a slow socket: once the queue
+ * reaches the high watermark the connection is treated as a slow consumer and the
+ * configured policy applies until the writer drains it back to the low watermark.
+ * - DROP: discard messages the client can live without (chat, INFO, MOVE, deltas)
+ * - COALESCE: replace a pending STATE or USER_LIST with the newer one, drop deltas
+ * - DISCONNECT: evict the client
+ * Whatever the policy, a queue that reaches twice the high watermark is evicted.
+ * A client that lost a delta this way is out of sync until its next STATE; once the
+ * queue has drained, takeKeyframeNeeded() tells its connection to ask the game for one.
+ */
+public class OutboundQueue {
+    public enum Policy { DROP, COALESCE, DISCONNECT }
+
+    private final ArrayDeque<Message> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final Policy policy;
+    private boolean slow = false;
+    private boolean closed = false;
+    private boolean keyframeNeeded = false; // a STATE_DELTA was dropped and no STATE queued since
+
+    public OutboundQueue(int lowWatermark, int highWatermark, Policy policy) {
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = Math.max(lowWatermark + 1, highWatermark);
+        this.policy = policy;
+    }
+
+    /** Creates a queue with the watermarks and policy from the ludo.outbound.* properties. */
+    public static OutboundQueue fromConfig() {
+        return new OutboundQueue(Constants.OUTBOUND_LOW_WATERMARK, Constants.OUTBOUND_HIGH_WATERMARK,
+                Policy.valueOf(Constants.OUTBOUND_POLICY.toUpperCase()));
+    }
+
+    /** Queues a message. Returns false if the consumer is too slow and should be evicted. */
+    public boolean offer(Message msg) {
+        lock.lock();
+        try {
+            if (closed) return true;
+            if (queue.size() >= highWatermark) slow = true;
+            if (Message.STATE.equals(msg.getType())) keyframeNeeded = false;
+
+            if (slow) {
+                if (policy == Policy.DISCONNECT || queue.size() >= highWatermark * 2) return false;
+                if (policy == Policy.COALESCE && coalesce(msg)) return true;
+                if (policy == Policy.DROP && isDroppable(msg)) {
+                    if (Message.STATE_DELTA.equals(msg.getType())) keyframeNeeded = true;
+                    ServerMetrics.droppedMessages.increment();
+                    return true;
+                }
+            }
+
+            queue.add(msg);
+            ServerMetrics.queuedMessages.increment();
+            ServerMetrics.recordQueueDepth(queue.size());
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the next message, or null if none is queued. */
+    public Message poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Waits up to the timeout for a message; returns null on timeout or once closed. */
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = unit.toNanos(timeout);
+            while (queue.isEmpty() && !closed && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true, once, when a delta was dropped and the queue has since drained below
+     * the low watermark, so the client should now be sent a keyframe.
+     */
+    public boolean takeKeyframeNeeded() {
+        lock.lock();
+        try {
+            if (!keyframeNeeded || slow || closed) return false;
+            keyframeNeeded = false;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stops taking messages but leaves the queued ones for the writer to drain. */
+    public void finish() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Discards pending messages and wakes a waiting writer. */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            ServerMetrics.queuedMessages.add(-queue.size());
+            queue.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Message dequeue() {
+        Message msg = queue.poll();
+        if (msg != null) {
+            ServerMetrics.queuedMessages.decrement();
+            if (slow && queue.size() <= lowWatermark) slow = false;
+        }
+        return msg;
+    }
+
+    /** Replaces a pending message of the same coalescable type. Returns true if msg was absorbed. */
+    private boolean coalesce(Message msg) {
+        String type = msg.getType();
+        if (Message.STATE_DELTA.equals(type)) {
+            // Superseded by the keyframe the client is sent once it has caught up
+            keyframeNeeded = true;
+            ServerMetrics.coalescedMessages.increment();
+            return true;
+        }
+        if (!Message.STATE.equals(type) && !Message.USER_LIST.equals(type)) return false;
+
+        for (Iterator<Message> it = queue.iterator(); it.hasNext(); ) {
+            if (type.equals(it.next().getType())) {
+                it.remove();
+                queue.add(msg);
+                ServerMetrics.coalescedMessages.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDroppable(Message msg) {
+        String type = msg.getType();
+        return !Message.STATE.equals(type) && !Message.YOUR_TURN.equals(type) && !Message.USER_LIST.equals(type)
+                && !Message.CHOOSE_TOKEN.equals(type) && !Message.GAME_OVER.equals(type)
+                && !Message.TURN_TIMEOUT.equals(type);
+    }
+}
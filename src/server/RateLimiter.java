@@ -0,0 +1,116 @@
+package server;
+
+import model.Message;
+import util.Constants;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-connection token buckets, checked on the connection's reader (its ClientHandler
+ * thread or its event loop) before a message reaches GameManager. Only that one thread
+ * touches a limiter, so it needs no locks or atomics.
+ *
+ * Chat draws from one bucket, and everything else a player sends (history requests,
+ * typing refreshes, rolls and token picks) from another, so a chatty player can still
+ * play. A message over the limit is dropped, and the sender gets one notice per burst of
+ * drops. A client that keeps flooding after that and runs up FLOOD_DROPS drops within
+ * FLOOD_WINDOW is disconnected.
+ *
+ * The turn holder's rolls and token picks are never checked, so their move is never lost
+ * to an empty bucket; the ones the game still refuses are charged through refused().
+ */
+public class RateLimiter {
+    public enum Verdict { ALLOW, DROP, NOTIFY, DISCONNECT }
+
+    private static final long FLOOD_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final TokenBucket chat = new TokenBucket(Constants.RATE_CHAT_PER_SEC, Constants.RATE_CHAT_BURST);
+    private final TokenBucket actions = new TokenBucket(Constants.RATE_ACTIONS_PER_SEC, Constants.RATE_ACTION_BURST);
+    private boolean notified = false; // a notice went out for the current run of drops
+    private long windowStart = 0;
+    private int windowDrops = 0;
+
+    /**
+     * Decides what to do with a message received at nowNanos (System.nanoTime()). myTurn
+     * says whether the sender holds the turn, which exempts its rolls and token picks.
+     */
+    public Verdict check(Message msg, boolean myTurn, long nowNanos) {
+        String type = msg.getType();
+        if (myTurn && (Message.ROLL.equals(type) || Message.MOVE_TOKEN.equals(type))) return Verdict.ALLOW;
+        return charge(bucketFor(type), nowNanos);
+    }
+
+    /**
+     * Charges a roll or token pick the game refused at nowNanos. Over the limit, the
+     * verdict says whether to notify or disconnect the sender; the message itself was
+     * already handled.
+     */
+    public Verdict refused(long nowNanos) {
+        return charge(actions, nowNanos);
+    }
+
+    private Verdict charge(TokenBucket bucket, long nowNanos) {
+        if (bucket == null) return Verdict.ALLOW;
+        if (bucket.take(nowNanos)) {
+            notified = false;
+            return Verdict.ALLOW;
+        }
+        ServerMetrics.rateLimited.increment();
+        if (nowNanos - windowStart > FLOOD_WINDOW_NANOS) {
+            windowStart = nowNanos;
+            windowDrops = 0;
+        }
+        if (Constants.RATE_FLOOD_DROPS > 0 && ++windowDrops >= Constants.RATE_FLOOD_DROPS) {
+            ServerMetrics.floodEvictions.increment();
+            return Verdict.DISCONNECT;
+        }
+        if (notified) return Verdict.DROP;
+        notified = true;
+        return Verdict.NOTIFY;
+    }
+
+    /** The notice sent with the first dropped message of a run. */
+    public static Message notice() {
+        return new Message(Message.INFO, "You're sending messages too fast; some were dropped.", "SERVER");
+    }
+
+    private TokenBucket bucketFor(String type) {
+        switch (type) {
+            case Message.PUBLIC_CHAT:
+            case Message.PRIVATE_CHAT:
+                return chat;
+            case Message.HISTORY:
+            case Message.TYPING:
+            case Message.ROLL:
+            case Message.MOVE_TOKEN:
+                return actions;
+            default:
+                return null;
+        }
+    }
+
+    /** Holds up to burst tokens, refilled continuously at ratePerSec; 0 or less disables the limit. */
+    private static final class TokenBucket {
+        private final double perNano;
+        private final double burst;
+        private double tokens;
+        private long last;
+        private boolean started = false;
+
+        TokenBucket(double ratePerSec, double burst) {
+            this.perNano = ratePerSec / 1e9;
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+        }
+
+        boolean take(long now) {
+            if (perNano <= 0) return true;
+            if (started) tokens = Math.min(burst, tokens + (now - last) * perNano);
+            started = true;
+            last = now;
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+    }
+}
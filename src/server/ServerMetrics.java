@@ -0,0 +1,104 @@
+package server;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters, printed periodically when -Dludo.metricsInterval is set.
+ * LongAdder keeps increments cheap when many connection threads update them at once.
+ */
+public class ServerMetrics {
+    public static final LongAdder queuedMessages = new LongAdder();
+    public static final LongAdder droppedMessages = new LongAdder();
+    public static final LongAdder coalescedMessages = new LongAdder();
+    public static final LongAdder slowConsumerEvictions = new LongAdder();
+    public static final LongAdder slowConsumerKeyframes = new LongAdder();
+    public static final LongAdder turnTimeouts = new LongAdder();
+    public static final LongAdder journalEvents = new LongAdder();
+    public static final LongAdder journalSyncs = new LongAdder();
+    public static final LongAdder spectatorResyncs = new LongAdder();
+    public static final LongAdder sessionResumes = new LongAdder();
+    public static final LongAdder resumeKeyframes = new LongAdder();
+    public static final LongAdder chatLogged = new LongAdder();
+    public static final LongAdder rateLimited = new LongAdder();
+    public static final LongAdder floodEvictions = new LongAdder();
+    public static final LongAdder typingRelayed = new LongAdder();
+    public static final LongAdder typingCoalesced = new LongAdder();
+    // Outbound I/O: frames sent, socket writes (one syscall each), and TCP segments they needed
+    public static final LongAdder framesWritten = new LongAdder();
+    public static final LongAdder socketWrites = new LongAdder();
+    public static final LongAdder segmentsWritten = new LongAdder();
+    public static final LongAdder turnsPlayed = new LongAdder();
+    // Payload bytes per TCP segment on a typical Ethernet path, for estimating segments per write
+    private static final int MSS = 1448;
+    private static final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /** Records one socket write of the given size. */
+    static void recordSocketWrite(long bytes) {
+        socketWrites.increment();
+        segmentsWritten.add(Math.max(1, (bytes + MSS - 1) / MSS));
+    }
+
+    static void recordQueueDepth(int depth) {
+        if (depth > maxQueueDepth.get()) maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    /** Starts a daemon thread that prints a metrics line every intervalSeconds. */
+    public static void startReporter(int intervalSeconds) {
+        if (intervalSeconds <= 0) return;
+        Thread t = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(intervalSeconds * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.println(summary());
+            }
+        }, "metrics-reporter");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public static String summary() {
+        return "[METRICS] queued=" + queuedMessages.sum()
+                + " maxDepth=" + maxQueueDepth.get()
+                + " dropped=" + droppedMessages.sum()
+                + " coalesced=" + coalescedMessages.sum()
+                + " evicted=" + slowConsumerEvictions.sum()
+                + " resyncKeyframes=" + slowConsumerKeyframes.sum()
+                + " turnTimeouts=" + turnTimeouts.sum()
+                + " journaled=" + journalEvents.sum()
+                + " fsyncs=" + journalSyncs.sum()
+                + " spectatorResyncs=" + spectatorResyncs.sum()
+                + " resumes=" + sessionResumes.sum()
+                + " resumeKeyframes=" + resumeKeyframes.sum()
+                + " chatLogged=" + chatLogged.sum()
+                + " rateLimited=" + rateLimited.sum()
+                + " floodEvictions=" + floodEvictions.sum()
+                + " typingRelayed=" + typingRelayed.sum()
+                + " typingCoalesced=" + typingCoalesced.sum()
+                + " frames=" + framesWritten.sum()
+                + " socketWrites=" + socketWrites.sum()
+                + " segments=" + segmentsWritten.sum()
+                + " turns=" + turnsPlayed.sum()
+                + perTurn()
+                + memory();
+    }
+
+    /** Heap in use and live platform threads (virtual threads aren't counted), for sizing per connection. */
+    private static String memory() {
+        Runtime rt = Runtime.getRuntime();
+        return " heapMB=" + (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024)
+                + " threads=" + ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    /** Socket writes and segments per turn played, across all clients. */
+    private static String perTurn() {
+        long turns = turnsPlayed.sum();
+        if (turns == 0) return "";
+        return String.format(" writesPerTurn=%.1f segmentsPerTurn=%.1f",
+                (double) socketWrites.sum() / turns, (double) segmentsWritten.sum() / turns);
+    }
+}
@@ -0,0 +1,220 @@
+package server;
+
+import model.GameState;
+import util.Constants;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless all-bot simulator for balancing and bot evaluation.
+ *
+ * Plays seeded games on the same GameState rules and BotStrategy implementations the
+ * server uses, with no sockets, Swing or bot delays, on every core. Reports throughput,
+ * win rate per seat and per strategy, and the distribution of game lengths.
+ *
+ * Usage: java server.Simulator [games] [strategies] [seed] [threads]
+ *   games       number of games (default 1000000)
+ *   strategies  one per seat, comma separated: greedy or mcts (default greedy,greedy,greedy,greedy)
+ *   seed        base seed; game g rolls its dice from seed + g (default: random)
+ *   threads     simulation threads (default: one per core)
+ *
+ * Strategies rotate one seat per game so each plays every seat equally often. Runs with
+ * only greedy bots are exactly reproducible from the seed; mcts adds its own randomness.
+ */
+public class Simulator {
+    // A game still running after this many rolls is counted as unfinished
+    private static final int MAX_ROLLS = 10_000;
+    private static final int CHUNK = 256;
+
+    public static void main(String[] args) throws InterruptedException {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        String[] strategies = (args.length > 1 ? args[1] : "greedy,greedy,greedy,greedy").split(",");
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : new SplittableRandom().nextLong();
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        if (strategies.length < 2 || strategies.length > GameState.SEATS) {
+            System.err.println("Need 2 to " + GameState.SEATS + " strategies, one per seat.");
+            return;
+        }
+        for (String name : strategies) newStrategy(name); // fail fast on a typo
+
+        System.out.println("[SIM] " + games + " games, seats " + String.join(",", strategies)
+                + ", seed " + seed + ", " + threads + " threads");
+        AtomicLong next = new AtomicLong();
+        AtomicLong done = new AtomicLong();
+        List<Stats> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new Workers.NamedThreadFactory("sim"));
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Stats stats = new Stats(strategies.length);
+            results.add(stats);
+            pool.execute(() -> run(strategies, seed, games, next, done, stats));
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("[SIM] %d/%d games, %.0f games/s%n", done.get(), games, done.get() / secs);
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+
+        Stats total = new Stats(strategies.length);
+        for (Stats s : results) total.add(s);
+        report(total, strategies, secs);
+    }
+
+    /** Worker loop: claims chunks of game numbers until all games are played. */
+    private static void run(String[] names, long seed, long games, AtomicLong next, AtomicLong done, Stats stats) {
+        int players = names.length;
+        // Searching strategies keep a tree per bot, so every thread gets its own instances
+        BotStrategy[] strategies = new BotStrategy[players];
+        for (int i = 0; i < players; i++) strategies[i] = newStrategy(names[i]);
+        BotStrategy[] seats = new BotStrategy[players];
+        int[] seatStrategy = new int[players];
+
+        long first;
+        while ((first = next.getAndAdd(CHUNK)) < games) {
+            long last = Math.min(first + CHUNK, games);
+            for (long g = first; g < last; g++) {
+                for (int seat = 0; seat < players; seat++) {
+                    seatStrategy[seat] = (int) ((seat + g) % players);
+                    seats[seat] = strategies[seatStrategy[seat]];
+                }
+                playGame(seats, new SplittableRandom(seed + g), stats, seatStrategy);
+            }
+            done.addAndGet(last - first);
+        }
+    }
+
+    /** Plays one game the way GameManager does: roll, pass if stuck, auto-play a forced move, else ask the bot. */
+    private static void playGame(BotStrategy[] seats, SplittableRandom dice, Stats stats, int[] seatStrategy) {
+        GameState state = new GameState();
+        for (int i = 0; i < seats.length; i++) state.addPlayer("BOT-" + (i + 1));
+        int rolls = 0;
+        while (!state.isGameOver() && rolls < MAX_ROLLS) {
+            int seat = state.getCurrentSeat();
+            int roll = dice.nextInt(6) + 1;
+            rolls++;
+            int mask = state.legalMoves(seat, roll);
+            if (mask == 0) {
+                state.passTurn(roll);
+            } else if (Integer.bitCount(mask) == 1) {
+                state.move(seat, Integer.numberOfTrailingZeros(mask), roll);
+            } else {
+                state.move(seat, seats[seat].chooseToken(state, seat, roll, mask), roll);
+            }
+        }
+        stats.record(state.isGameOver() ? state.getWinner() : -1, rolls, seatStrategy);
+    }
+
+    private static BotStrategy newStrategy(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "greedy":
+                return BotStrategy.GREEDY;
+            case "mcts":
+                return new MctsStrategy(Constants.BOT_SEARCH_MS);
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+    }
+
+    private static void report(Stats total, String[] names, double secs) {
+        long finished = total.games - total.unfinished;
+        System.out.printf("[SIM] %d games in %.2f s: %.0f games/s, %.1f M rolls/s%n",
+                total.games, secs, total.games / secs, total.rolls / secs / 1e6);
+        if (total.unfinished > 0) {
+            System.out.println("[SIM] " + total.unfinished + " games hit " + MAX_ROLLS + " rolls unfinished");
+        }
+        if (finished == 0) return;
+
+        StringBuilder seats = new StringBuilder("[SIM] Win rate by seat:");
+        for (int seat = 0; seat < names.length; seat++) {
+            seats.append(String.format("  %d: %.2f%%", seat, 100.0 * total.seatWins[seat] / finished));
+        }
+        System.out.println(seats);
+
+        // A strategy listed on k seats wins k/n of games at parity
+        Map<String, long[]> byName = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            long[] entry = byName.computeIfAbsent(names[i].trim().toLowerCase(), k -> new long[2]);
+            entry[0] += total.strategyWins[i];
+            entry[1]++;
+        }
+        System.out.println("[SIM] Win rate by strategy (per seat, parity " + String.format("%.2f%%", 100.0 / names.length) + "):");
+        for (Map.Entry<String, long[]> e : byName.entrySet()) {
+            long[] v = e.getValue();
+            System.out.printf("[SIM]   %-8s %.2f%% over %d seat(s)%n", e.getKey(), 100.0 * v[0] / v[1] / finished, v[1]);
+        }
+
+        System.out.printf("[SIM] Game length in rolls: mean %.1f, min %d, p10 %d, p50 %d, p90 %d, p99 %d, max %d%n",
+                (double) total.finishedRolls / finished, total.percentile(0), total.percentile(0.10),
+                total.percentile(0.50), total.percentile(0.90), total.percentile(0.99), total.percentile(1.0));
+        int bucket = 100;
+        long peak = 0;
+        long[] buckets = new long[MAX_ROLLS / bucket + 1];
+        for (int rolls = 0; rolls <= MAX_ROLLS; rolls++) buckets[rolls / bucket] += total.lengths[rolls];
+        for (long b : buckets) peak = Math.max(peak, b);
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == 0) continue;
+            int bar = (int) Math.ceil(40.0 * buckets[i] / peak);
+            System.out.printf("[SIM]   %5d-%-5d %6.2f%% %s%n", i * bucket, i * bucket + bucket - 1,
+                    100.0 * buckets[i] / finished, "#".repeat(bar));
+        }
+    }
+
+    /** Per-thread counters, merged once at the end. */
+    private static final class Stats {
+        long games;
+        long unfinished;
+        long rolls;
+        long finishedRolls;
+        final long[] seatWins = new long[GameState.SEATS];
+        final long[] strategyWins;
+        final long[] lengths = new long[MAX_ROLLS + 1]; // finished games by number of rolls
+
+        Stats(int players) {
+            strategyWins = new long[players];
+        }
+
+        void record(int winner, int gameRolls, int[] seatStrategy) {
+            games++;
+            rolls += gameRolls;
+            if (winner < 0) {
+                unfinished++;
+                return;
+            }
+            finishedRolls += gameRolls;
+            seatWins[winner]++;
+            strategyWins[seatStrategy[winner]]++;
+            lengths[gameRolls]++;
+        }
+
+        void add(Stats o) {
+            games += o.games;
+            unfinished += o.unfinished;
+            rolls += o.rolls;
+            finishedRolls += o.finishedRolls;
+            for (int i = 0; i < seatWins.length; i++) seatWins[i] += o.seatWins[i];
+            for (int i = 0; i < strategyWins.length; i++) strategyWins[i] += o.strategyWins[i];
+            for (int i = 0; i < lengths.length; i++) lengths[i] += o.lengths[i];
+        }
+
+        /** Smallest game length with at least this fraction of finished games at or below it. */
+        int percentile(double fraction) {
+            long finished = games - unfinished;
+            long target = Math.max(1, (long) Math.ceil(fraction * finished));
+            long seen = 0;
+            for (int rolls = 0; rolls < lengths.length; rolls++) {
+                seen += lengths[rolls];
+                if (seen >= target) return rolls;
+            }
+            return MAX_ROLLS;
+        }
+    }
+}
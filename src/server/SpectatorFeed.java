@@ -0,0 +1,162 @@
+package server;
+
+import model.GameState;
+import model.Message;
+import model.MessageCodec;
+import util.Constants;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only viewers of one match. GameManager publishes its broadcasts into a lock-free
+ * queue (state updates carry a copy of the board); a shared fan-out thread drains it
+ * every tick and hands the batch to each viewer, so any number of spectators never
+ * touch the game lock. Each tick's frames are encoded once and shared by every viewer.
+ * A viewer whose send queue backs up stops receiving batches; once it has drained it
+ * gets a single keyframe of the latest board instead of the backlog.
+ */
+public class SpectatorFeed {
+    private final String matchId;
+    private final ConcurrentLinkedQueue<Update> updates = new ConcurrentLinkedQueue<>();
+    private final Map<Connection, Viewer> viewers = new ConcurrentHashMap<>();
+    private volatile boolean active = false; // nothing is queued while nobody is watching
+    private volatile boolean closed = false;
+    private ScheduledExecutorService fanout;
+    private ScheduledFuture<?> task;
+
+    // Fan-out thread only
+    private final ArrayList<Message> batch = new ArrayList<>();
+    private int boardSeq;
+    private GameState board;
+
+    public SpectatorFeed(String matchId) {
+        this.matchId = matchId;
+    }
+
+    /** Queues a broadcast for viewers. Cheap no-op while nobody is watching. */
+    public void publish(Message msg) {
+        if (active && !closed) updates.add(new Update(msg, 0, null));
+    }
+
+    /** Queues a keyframe or delta together with the board it leaves, for viewers catching up. */
+    public void publishState(Message msg, int seq, GameState state) {
+        if (active && !closed) updates.add(new Update(msg, seq, state.copy()));
+    }
+
+    /**
+     * Adds a viewer, seeding the feed with the current board. Call under the game lock so
+     * the board is ordered with the updates around it. Returns the number of viewers.
+     */
+    public int add(Connection connection, ScheduledExecutorService fanout, int seq, GameState state) {
+        synchronized (this) {
+            if (closed) return viewers.size();
+            if (task == null) {
+                this.fanout = fanout;
+                task = fanout.scheduleAtFixedRate(this::tick, Constants.SPECTATOR_TICK_MS,
+                        Constants.SPECTATOR_TICK_MS, TimeUnit.MILLISECONDS);
+            }
+            active = true;
+            updates.add(new Update(null, seq, state.copy()));
+            viewers.put(connection, new Viewer());
+            return viewers.size();
+        }
+    }
+
+    /** Removes a viewer; once the last one leaves, broadcasts stop being queued again. */
+    public void remove(Connection connection) {
+        synchronized (this) {
+            viewers.remove(connection);
+            if (viewers.isEmpty()) active = false;
+        }
+    }
+
+    public int size() {
+        return viewers.size();
+    }
+
+    /** Stops the feed: viewers get what is still queued, then they are disconnected. */
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (task == null) return;
+            task.cancel(false);
+        }
+        fanout.execute(() -> {
+            tick();
+            for (Connection connection : viewers.keySet()) connection.close();
+            viewers.clear();
+        });
+    }
+
+    /** Drains this tick's updates and sends them to every viewer. Fan-out thread only. */
+    private void tick() {
+        try {
+            Update update;
+            while ((update = updates.poll()) != null) {
+                if (update.board != null) {
+                    boardSeq = update.seq;
+                    board = update.board;
+                }
+                if (update.msg == null) continue;
+                if (Message.STATE.equals(update.msg.getType())) {
+                    // A keyframe supersedes the board updates queued before it in this tick
+                    batch.removeIf(m -> Message.STATE.equals(m.getType()) || Message.STATE_DELTA.equals(m.getType()));
+                }
+                batch.add(update.msg);
+            }
+            if (viewers.isEmpty()) return;
+            for (Message msg : batch) msg.toFrame(MessageCodec.BINARY); // encoded here once, shared by every viewer
+
+            Message keyframe = null;
+            for (Map.Entry<Connection, Viewer> entry : viewers.entrySet()) {
+                Connection connection = entry.getKey();
+                Viewer viewer = entry.getValue();
+                int backlog = connection.backlog();
+                if (!viewer.behind && backlog >= Constants.SPECTATOR_MAX_BACKLOG) {
+                    viewer.behind = true;
+                }
+                if (viewer.behind) {
+                    if (backlog > 0 || board == null) continue;
+                    if (keyframe == null) {
+                        keyframe = new Message(Message.STATE, GameManager.keyframe(boardSeq, board), "SERVER");
+                    }
+                    // The keyframe already reflects this tick's batch, so the viewer skips it
+                    connection.sendMessage(keyframe);
+                    viewer.behind = false;
+                    ServerMetrics.spectatorResyncs.increment();
+                    continue;
+                }
+                for (Message msg : batch) connection.sendMessage(msg);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[SPECTATE] Fan-out failed for " + matchId + ": " + e.getMessage());
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private static final class Update {
+        final Message msg;     // null for a board-only update
+        final int seq;
+        final GameState board; // null unless the update changes the board
+
+        Update(Message msg, int seq, GameState board) {
+            this.msg = msg;
+            this.seq = seq;
+            this.board = board;
+        }
+    }
+
+    private static final class Viewer {
+        // Starts behind, so a new viewer's first message is a keyframe
+        boolean behind = true;
+    }
+}
@@ -0,0 +1,116 @@
+package server;
+
+import model.Message;
+import model.ObjectMessageChannel;
+import util.Constants;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Soak test for the object-stream protocol. Streams a match's traffic (chat with state
+ * updates and moves between) over one ObjectMessageChannel on a loopback socket, as
+ * ClientHandler and LudoClient do, and samples live heap after a GC at every interval.
+ * Fails (exit status 1) if the live heap grows by more than the allowed amount after the
+ * first sample, i.e. if either end of the stream retains the messages it has seen.
+ *
+ * Usage: java server.StreamSoak [minutes] [intervalSeconds] [maxGrowthMB]
+ *   minutes          how long to run (default 60)
+ *   intervalSeconds  time between heap samples (default 30)
+ *   maxGrowthMB      allowed growth of the live heap over the run (default 8)
+ *
+ * Run with -Dludo.objectStream.resetMessages=2147483647 -Dludo.objectStream.resetBytes=2147483647
+ * to see the unbounded growth of a stream that is never reset.
+ */
+public class StreamSoak {
+    public static void main(String[] args) throws Exception {
+        double minutes = args.length > 0 ? Double.parseDouble(args[0]) : 60;
+        int interval = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        long maxGrowth = (args.length > 2 ? Long.parseLong(args[2]) : 8) << 20;
+
+        System.out.println("[SOAK] " + minutes + " min, reset every " + Constants.OBJECT_STREAM_RESET_MESSAGES
+                + " messages or " + Constants.OBJECT_STREAM_RESET_BYTES + " bytes");
+        AtomicLong received = new AtomicLong();
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(listener.getInetAddress(), listener.getLocalPort());
+             Socket server = listener.accept()) {
+            ObjectMessageChannel[] ends = new ObjectMessageChannel[2];
+            Thread opener = new Thread(() -> {
+                try {
+                    ends[1] = new ObjectMessageChannel(client.getInputStream(), client.getOutputStream());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            opener.start(); // each end reads the other's stream header, so they open concurrently
+            ends[0] = new ObjectMessageChannel(server.getInputStream(), server.getOutputStream());
+            opener.join();
+            ObjectMessageChannel reader = ends[1];
+
+            Thread drain = new Thread(() -> {
+                try {
+                    while (true) {
+                        reader.receive();
+                        received.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    // closed at the end of the run
+                }
+            }, "soak-reader");
+            drain.setDaemon(true);
+            drain.start();
+
+            Thread writer = new Thread(() -> send(ends[0]), "soak-writer");
+            writer.setDaemon(true);
+            writer.start();
+
+            long end = System.nanoTime() + (long) (minutes * 60e9);
+            long first = -1;
+            long last = 0;
+            while (System.nanoTime() < end) {
+                Thread.sleep(Math.min(interval * 1000L, Math.max(1, (end - System.nanoTime()) / 1_000_000)));
+                last = liveHeap();
+                if (first < 0) first = last;
+                System.out.printf("[SOAK] %,d messages, live heap %.1f MB%n", received.get(), last / 1048576.0);
+            }
+            long growth = last - first;
+            boolean flat = growth <= maxGrowth;
+            System.out.printf("[SOAK] %s: live heap grew %.1f MB over %,d messages (limit %d MB)%n",
+                    flat ? "PASS" : "FAIL", growth / 1048576.0, received.get(), maxGrowth >> 20);
+            if (!flat) System.exit(1);
+        }
+    }
+
+    /** Writes the kind of traffic a match with continuous chat produces, until the socket closes. */
+    private static void send(ObjectMessageChannel channel) {
+        try {
+            for (long n = 0; ; n++) {
+                Message msg;
+                switch ((int) (n % 4)) {
+                    case 0:
+                        msg = new Message(Message.STATE_DELTA, n + "|0.1=" + (n % 57) + ";", "SERVER");
+                        break;
+                    case 1:
+                        msg = new Message(Message.MOVE, "alice rolled 4 and moved token 2", "SERVER");
+                        break;
+                    default:
+                        msg = new Message(Message.PUBLIC_CHAT, "chat message number " + n, "bob");
+                        break;
+                }
+                channel.send(msg);
+            }
+        } catch (IOException e) {
+            // closed at the end of the run
+        }
+    }
+
+    private static long liveHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        Thread.sleep(100);
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
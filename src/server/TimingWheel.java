@@ -0,0 +1,155 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timing wheel: one thread serves any number of pending timers.
+ *
+ * Level 0 has one bucket per tick; each higher level's bucket spans a whole turn of
+ * the level below and is cascaded down when the lower wheel wraps. Scheduling and
+ * cancelling are O(1) and never block: new timers go through a lock-free queue that
+ * the wheel thread drains every tick, and a cancelled timer is just marked and dropped
+ * when its bucket comes round. Expired tasks run on the wheel thread, so they must be
+ * short; callers normally hand the real work to their own executor.
+ */
+public class TimingWheel {
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final List<List<Timeout>> buckets = new ArrayList<>(); // LEVELS * wheelSize, wheel thread only
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+    private long currentTick = 0; // wheel thread only
+
+    /** A scheduled task; cancel() is safe from any thread. */
+    public static class Timeout {
+        private static final int WAITING = 0, CANCELLED = 1, EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadlineTick;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /** Returns true if the task had not run yet and now never will. */
+        public boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+    }
+
+    /**
+     * @param tickMillis timer resolution
+     * @param wheelSize  buckets per level, rounded up to a power of two; the wheel covers
+     *                   tickMillis * wheelSize^4 before clamping to its last bucket
+     */
+    public TimingWheel(long tickMillis, int wheelSize, String threadName) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheelBits = 32 - Integer.numberOfLeadingZeros(Math.max(2, wheelSize) - 1);
+        this.wheelMask = (1 << wheelBits) - 1;
+        for (int i = 0; i < LEVELS << wheelBits; i++) buckets.add(new ArrayList<>());
+        Thread t = new Thread(this::run, threadName);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Runs task on the wheel thread after delayMillis (rounded up to the next tick). */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long elapsed = System.nanoTime() - startNanos;
+        long deadline = (elapsed + TimeUnit.MILLISECONDS.toNanos(delayMillis) + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(task, deadline);
+        pending.incrementAndGet();
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    /** Timers scheduled and not yet run or discarded, for metrics. */
+    public int pendingCount() {
+        return pending.get();
+    }
+
+    private void run() {
+        while (true) {
+            long nextTickAt = startNanos + (currentTick + 1) * tickNanos;
+            long wait = nextTickAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            currentTick++;
+            // Drain before expiring, so a timer due this tick is in its bucket in time
+            Timeout t;
+            while ((t = incoming.poll()) != null) place(t);
+            if ((currentTick & wheelMask) == 0) cascade(1);
+            expire(bucket(0, currentTick));
+        }
+    }
+
+    /** Files a timer in the finest level whose span still reaches its deadline. */
+    private void place(Timeout t) {
+        if (t.state.get() == Timeout.CANCELLED) {
+            pending.decrementAndGet();
+            return;
+        }
+        long delta = t.deadlineTick - currentTick;
+        if (delta <= 0) {
+            // Overdue (scheduled with no delay, or the wheel thread fell behind)
+            bucket(0, currentTick).add(t);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (wheelBits * (level + 1)) || level == LEVELS - 1) {
+                long tick = level == LEVELS - 1 ? Math.min(t.deadlineTick, currentTick + (1L << (wheelBits * LEVELS)) - 1)
+                        : t.deadlineTick;
+                bucket(level, tick).add(t);
+                return;
+            }
+        }
+    }
+
+    /** Moves the current bucket of a higher level down once the level below has wrapped. */
+    private void cascade(int level) {
+        if (level >= LEVELS) return;
+        long slotTick = currentTick >>> (wheelBits * level);
+        if ((slotTick & wheelMask) == 0) cascade(level + 1);
+        List<Timeout> bucket = bucket(level, currentTick);
+        if (bucket.isEmpty()) return;
+        List<Timeout> moving = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Timeout t : moving) place(t);
+    }
+
+    private void expire(List<Timeout> bucket) {
+        if (bucket.isEmpty()) return;
+        List<Timeout> due = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Timeout t : due) {
+            if (t.deadlineTick > currentTick) {
+                place(t); // clamped far-future timer on its way down
+                continue;
+            }
+            pending.decrementAndGet();
+            if (!t.state.compareAndSet(Timeout.WAITING, Timeout.EXPIRED)) continue;
+            try {
+                t.task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private List<Timeout> bucket(int level, long tick) {
+        int slot = (int) ((tick >>> (wheelBits * level)) & wheelMask);
+        return buckets.get((level << wheelBits) + slot);
+    }
+}
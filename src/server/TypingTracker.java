@@ -0,0 +1,78 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is typing in which conversation of one match. Clients re-send TYPING every few
+ * seconds while typing; only the first one of a run is a start transition worth
+ * relaying, and the rest just push back the expiry. A run ends with an explicit stop,
+ * the typer's chat message, or expiry. Used from the lock-free chat path.
+ */
+public class TypingTracker {
+    private final Map<String, Typing> active = new ConcurrentHashMap<>();
+
+    /**
+     * Records that name is typing to recipient (null = public chat) until now + expiryMs.
+     * Returns the new run if this starts one, or null if it only extends the current one.
+     */
+    public Typing start(String name, String recipient, long now, long expiryMs) {
+        Typing[] started = new Typing[1];
+        active.compute(key(name, recipient), (k, current) -> {
+            if (current != null) {
+                current.expiresAt = now + expiryMs;
+                return current;
+            }
+            started[0] = new Typing(name, recipient, now + expiryMs);
+            return started[0];
+        });
+        if (started[0] == null) ServerMetrics.typingCoalesced.increment();
+        return started[0];
+    }
+
+    /** Ends name's run in the conversation; true if there was one. */
+    public boolean stop(String name, String recipient) {
+        return active.remove(key(name, recipient)) != null;
+    }
+
+    /** Ends every run of name's (they left); returns them so the stops can be relayed. */
+    public List<Typing> stopAll(String name) {
+        List<Typing> stopped = new ArrayList<>();
+        active.values().removeIf(t -> {
+            if (!t.name.equals(name)) return false;
+            stopped.add(t);
+            return true;
+        });
+        return stopped;
+    }
+
+    /**
+     * Checks a run whose expiry timer fired. Returns 0 if it expired and was removed,
+     * the milliseconds left if it was extended meanwhile, or -1 if it already ended.
+     */
+    public long expire(Typing typing, long now) {
+        String key = key(typing.name, typing.recipient);
+        long left = typing.expiresAt - now;
+        if (left > 0) return active.get(key) == typing ? left : -1;
+        return active.remove(key, typing) ? 0 : -1;
+    }
+
+    private static String key(String name, String recipient) {
+        return recipient == null ? name : name + '\u0000' + recipient;
+    }
+
+    /** One run of typing, from its start transition until it ends. */
+    public static final class Typing {
+        final String name;
+        final String recipient;
+        volatile long expiresAt;
+
+        Typing(String name, String recipient, long expiresAt) {
+            this.name = name;
+            this.recipient = recipient;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executor that runs per-connection work.
+ * "platform" starts one OS thread per task (the original behaviour);
+ * "virtual" uses a virtual thread per task on JDK 21+ and falls back to platform threads otherwise.
+ */
+public class Workers {
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    public static ExecutorService newPerTaskExecutor(String mode) {
+        if (VIRTUAL.equals(mode)) {
+            try {
+                // Looked up reflectively so the project still compiles on older JDKs
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("[SERVER] Virtual threads need JDK 21+, using platform threads.");
+            }
+        }
+        return Executors.newCachedThreadPool(new NamedThreadFactory("worker"));
+    }
+
+    /** Names threads so thread dumps show which pool they belong to. */
+    static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, prefix + "-" + count.incrementAndGet());
+        }
+    }
+}
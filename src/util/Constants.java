@@ -3,4 +3,84 @@ package util;
 public class Constants {
     public static final int SERVER_PORT = 5555;
     public static final String HOST = "localhost";
+
+    // Transport used by the server: "blocking" (thread per client) or "nio" (selector event loops)
+    public static final String TRANSPORT = System.getProperty("ludo.transport", "blocking");
+    // Wire protocol used by the client: "binary" (compact frames), "framed" (serialized frames) or "object" (Java object streams)
+    public static final String PROTOCOL = System.getProperty("ludo.protocol", "binary");
+    // Threads for client handlers: "platform" or "virtual" (JDK 21+)
+    public static final String THREADS = System.getProperty("ludo.threads", "platform");
+    // Object-stream protocol: reset the stream's handle table after this many messages or bytes
+    public static final int OBJECT_STREAM_RESET_MESSAGES = Integer.getInteger("ludo.objectStream.resetMessages", 256);
+    public static final int OBJECT_STREAM_RESET_BYTES = Integer.getInteger("ludo.objectStream.resetBytes", 256 * 1024);
+    // Number of selector threads for the nio transport
+    public static final int EVENT_LOOPS = Integer.getInteger("ludo.eventLoops",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    // Delay before a bot acts once its turn begins (0 for simulations)
+    public static final int BOT_THINK_MS = Integer.getInteger("ludo.botThinkMs", 1000);
+    // Bot move choice: "greedy" (instant heuristic) or "mcts" (parallel Monte Carlo tree search)
+    public static final String BOT_STRATEGY = System.getProperty("ludo.bot", "greedy");
+    // Wall-clock budget for one mcts decision, and the fork-join threads shared by all searching bots
+    public static final int BOT_SEARCH_MS = Integer.getInteger("ludo.botSearchMs", 200);
+    public static final int BOT_SEARCH_THREADS = Integer.getInteger("ludo.botSearchThreads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    // Time a human has to play a turn (roll and pick a token) before it is played for them; 0 disables
+    public static final int TURN_TIMEOUT_MS = Integer.getInteger("ludo.turnTimeoutMs", 30000);
+    // The player is warned this long before their turn expires
+    public static final int TURN_WARNING_MS = Integer.getInteger("ludo.turnWarningMs", 10000);
+    // Fixed dice seed for every match (e.g. to replay a match from its logged seed); unset = a fresh seed per match
+    public static final Long MATCH_SEED = Long.getLong("ludo.seed");
+    // Match event journal directory ("off" disables), segment size and fsync policy: "batch", "interval" or "none"
+    public static final String JOURNAL_DIR = System.getProperty("ludo.journal", "journal");
+    public static final int JOURNAL_SEGMENT_MB = Integer.getInteger("ludo.journal.segmentMb", 64);
+    public static final String JOURNAL_FSYNC = System.getProperty("ludo.journal.fsync", "interval");
+    public static final int JOURNAL_FSYNC_MS = Integer.getInteger("ludo.journal.fsyncMs", 100);
+    // Human seats per match unless a quick-match request asks for another size (1-4)
+    public static final int PLAYERS_PER_MATCH = Math.max(1, Math.min(4, Integer.getInteger("ludo.players", 4)));
+    // How long a quick match waits for more players before bots take the empty seats (0 = wait until full)
+    public static final int LOBBY_BACKFILL_MS = Integer.getInteger("ludo.lobby.backfillMs", 20000);
+    // How long a dropped player's seat is held for them to resume their session, and how many
+    // recent board updates are kept to catch them up without a full keyframe
+    public static final int SESSION_GRACE_MS = Integer.getInteger("ludo.session.graceMs", 60000);
+    public static final int SESSION_RESYNC_HISTORY = Math.max(1, Integer.getInteger("ludo.session.resyncHistory", 64));
+    // Chat messages kept per conversation (public room or private pair), and the most one history page returns
+    public static final int CHAT_HISTORY_SIZE = Integer.getInteger("ludo.chat.historySize", 200);
+    public static final int CHAT_HISTORY_PAGE = Integer.getInteger("ludo.chat.historyPage", 50);
+    // Durable, searchable chat log directory ("off" disables) and its segment size; each sealed segment gets an index
+    public static final String CHAT_LOG_DIR = System.getProperty("ludo.chatLog", "chatlog");
+    public static final int CHAT_LOG_SEGMENT_MB = Integer.getInteger("ludo.chatLog.segmentMb", 16);
+    // A typing indicator ends this long after the typer's last TYPING refresh (clients refresh every 3s)
+    public static final int TYPING_EXPIRY_MS = Integer.getInteger("ludo.typing.expiryMs", 6000);
+    // Per-connection message rates: chat, and game actions (rolls, token picks, history requests).
+    // Over-limit messages are dropped; this many drops within 10s disconnects the client (0 = never)
+    public static final double RATE_CHAT_PER_SEC = Double.parseDouble(System.getProperty("ludo.rate.chatPerSec", "5"));
+    public static final int RATE_CHAT_BURST = Integer.getInteger("ludo.rate.chatBurst", 10);
+    public static final double RATE_ACTIONS_PER_SEC = Double.parseDouble(System.getProperty("ludo.rate.actionsPerSec", "10"));
+    public static final int RATE_ACTION_BURST = Integer.getInteger("ludo.rate.actionBurst", 20);
+    public static final int RATE_FLOOD_DROPS = Integer.getInteger("ludo.rate.floodDrops", 200);
+    // Spectator fan-out period, and the send backlog at which a spectator skips ahead to the latest board
+    public static final int SPECTATOR_TICK_MS = Integer.getInteger("ludo.spectatorTickMs", 100);
+    public static final int SPECTATOR_MAX_BACKLOG = Integer.getInteger("ludo.spectatorMaxBacklog", 32);
+    // A match checkpoints its state into the journal every this many game events, bounding replay on recovery
+    public static final int SNAPSHOT_EVERY = Integer.getInteger("ludo.snapshotEvery", 200);
+    // How long a match recovered after a restart waits for its players to rejoin before it is retired
+    public static final int RECOVERY_REJOIN_MS = Integer.getInteger("ludo.recovery.rejoinMs", 120000);
+    // Number of match shards; each has its own lifecycle thread
+    public static final int MATCH_SHARDS = Integer.getInteger("ludo.shards",
+            Runtime.getRuntime().availableProcessors());
+    // A full STATE keyframe is sent after this many STATE_DELTA updates
+    public static final int KEYFRAME_INTERVAL = Integer.getInteger("ludo.keyframeInterval", 16);
+    // Per-client outbound queue: slow-consumer policy applies between these depths
+    public static final int OUTBOUND_LOW_WATERMARK = Integer.getInteger("ludo.outbound.low", 32);
+    public static final int OUTBOUND_HIGH_WATERMARK = Integer.getInteger("ludo.outbound.high", 128);
+    // Slow-consumer policy: "drop", "coalesce" or "disconnect"
+    public static final String OUTBOUND_POLICY = System.getProperty("ludo.outbound.policy", "coalesce");
+    // How long a blocking-transport writer waits for the rest of a burst before flushing what it has (0 = don't wait)
+    public static final int OUTBOUND_LINGER_US = Integer.getInteger("ludo.outbound.lingerUs", 500);
+    // Most messages a blocking-transport writer sends in one write before flushing
+    public static final int OUTBOUND_MAX_BATCH = Math.max(1, Integer.getInteger("ludo.outbound.maxBatch", 64));
+    // Seconds between metrics log lines; 0 disables
+    public static final int METRICS_INTERVAL = Integer.getInteger("ludo.metricsInterval", 0);
+    // Largest frame accepted on the framed protocol
+    public static final int MAX_FRAME_SIZE = 64 * 1024;
 }